@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import generator.regex.DFA;
 import generator.regex.NFA_Identifier;
 import generator.regex.RecursiveDescent;
+import generator.regex.Regex_Matcher;
 import global.InputBuffer;
 import global.Lexer;
 import global.Token;
@@ -32,7 +33,9 @@ public class Script_Lexer extends Lexer<Token<String>> {
 	private boolean id;
 	
 	private static final String ID_MATCH = "([A-Za-z])([A-Za-z0-9_])*";
-	private DFA id_match;
+	//compiled once and shared by every script lexer
+	private static DFA id_pattern = null;
+	private Regex_Matcher id_match;
 	
 	/**
 	 * setup lexer with given filename and build DFAs from given terminal list
@@ -69,15 +72,27 @@ public class Script_Lexer extends Lexer<Token<String>> {
 		}
 		//make id match dfa
 		if(this.id) {
-			RecursiveDescent rd = new RecursiveDescent(ID_MATCH, null);
-			NFA_Identifier id_nfa = rd.descend();
-			this.id_match = new DFA(id_nfa.getNFA());
+			this.id_match = idPattern().matcher();
 		}
 		else {
 			this.id_match = null;
 		}
 	}
 	
+	/**
+	 * accessor for the compiled id pattern (built on first use)
+	 * @return dfa that matches ids
+	 * @throws ParseException thrown by recursive descent dfa builder
+	 */
+	private static synchronized DFA idPattern() throws ParseException {
+		if(id_pattern == null) {
+			RecursiveDescent rd = new RecursiveDescent(ID_MATCH, null);
+			NFA_Identifier id_nfa = rd.descend();
+			id_pattern = new DFA(id_nfa.getNFA());
+		}
+		return id_pattern;
+	}
+	
 	/**
 	 * close current file and open a new file for scanning
 	 * @param filename new file to open
@@ -0,0 +1,268 @@
+package generator.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Aho_Corasick.java
+ * Automaton for a set of literal strings (a regex like foo|bar|baz), built
+ * straight from the strings without an nfa or subset construction.
+ * The trie of the literals is the anchored pattern; its goto/fail links,
+ * resolved into one dense table, find every literal occurrence in one pass.
+ */
+public class Aho_Corasick implements Regex_Pattern {
+	
+	private ArrayList<String> literals;
+	//one class per char used in the literals, class 0 for every other char
+	private Alphabet alphabet;
+	private char[][] class_map;
+	private int classes;
+	//trie transitions (DFA.DEAD where there is no edge), row per state
+	private int[] trie;
+	//goto/fail transitions resolved into a full table, row per state
+	private int[] delta;
+	//state ends a literal
+	private boolean[] finals;
+	//state has no trie edges (no longer literal can match)
+	private boolean[] exhausted;
+	//length of the string spelled by each state
+	private int[] depth;
+	//nearest final state on the fail chain (-1 if none)
+	private int[] dict;
+	private Regex_Stats stats;
+	
+	/**
+	 * build the automaton for the given literals
+	 * @param literals non-empty strings to match
+	 */
+	public Aho_Corasick(ArrayList<String> literals) {
+		long time = System.nanoTime();
+		this.literals = new ArrayList<String>(literals);
+		StringBuilder letters = new StringBuilder();
+		int chars = 0;
+		for(String literal : literals) {
+			letters.append(literal);
+			chars += literal.length();
+		}
+		this.alphabet = new Alphabet(letters.toString());
+		this.class_map = this.alphabet.getPages();
+		this.classes = this.alphabet.size();
+		
+		//trie, at most one state per literal char plus the root
+		int capacity = chars + 1;
+		this.trie = new int[capacity * this.classes];
+		Arrays.fill(this.trie, DFA.DEAD);
+		this.finals = new boolean[capacity];
+		this.depth = new int[capacity];
+		int size = 1;
+		for(String literal : literals) {
+			int state = 0;
+			for(int i = 0; i < literal.length(); i++) {
+				int symbol = this.alphabet.classOf(literal.charAt(i));
+				int next = this.trie[state * this.classes + symbol];
+				if(next == DFA.DEAD) {
+					next = size++;
+					this.trie[state * this.classes + symbol] = next;
+					this.depth[next] = this.depth[state] + 1;
+				}
+				state = next;
+			}
+			this.finals[state] = true;
+		}
+		this.trie = Arrays.copyOf(this.trie, size * this.classes);
+		this.finals = Arrays.copyOf(this.finals, size);
+		this.depth = Arrays.copyOf(this.depth, size);
+		
+		//fail links breadth first, missing edges follow the fail link
+		this.delta = new int[size * this.classes];
+		this.dict = new int[size];
+		this.exhausted = new boolean[size];
+		int[] fail = new int[size];
+		int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = 0;
+		this.dict[0] = -1;
+		while(head < tail) {
+			int state = queue[head++];
+			boolean out = false;
+			for(int a = 0; a < this.classes; a++) {
+				int next = this.trie[state * this.classes + a];
+				if(next == DFA.DEAD) {
+					this.delta[state * this.classes + a] = state == 0 ? 0 : this.delta[fail[state] * this.classes + a];
+					continue;
+				}
+				out = true;
+				fail[next] = state == 0 ? 0 : this.delta[fail[state] * this.classes + a];
+				this.dict[next] = this.finals[fail[next]] ? fail[next] : this.dict[fail[next]];
+				this.delta[state * this.classes + a] = next;
+				queue[tail++] = next;
+			}
+			this.exhausted[state] = !out;
+		}
+		
+		this.stats = new Regex_Stats();
+		this.stats.setDFA(size, size, this.classes);
+		this.stats.setSubsetTime(System.nanoTime() - time);
+	}
+	
+	/**
+	 * accessor for the literals
+	 * @return the literals this automaton matches
+	 */
+	public ArrayList<String> getLiterals() {
+		return this.literals;
+	}
+	
+	/**
+	 * accessor for the number of trie states
+	 * @return number of states
+	 */
+	public int size() {
+		return this.finals.length;
+	}
+	
+	/**
+	 * accessor for the sizes and build times of this automaton
+	 * @return stats of this automaton
+	 */
+	@Override
+	public Regex_Stats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * make a new cursor at the root of the trie
+	 * @return new cursor over this automaton
+	 */
+	@Override
+	public Cursor matcher() {
+		return new Cursor();
+	}
+	
+	/**
+	 * run the goto/fail table over the text once
+	 * @param text text to search
+	 * @return set of offsets a literal occurrence starts at
+	 */
+	BitSet starts(CharSequence text) {
+		final int[] delta = this.delta;
+		final boolean[] finals = this.finals;
+		final int[] dict = this.dict;
+		final int[] depth = this.depth;
+		final char[][] class_map = this.class_map;
+		final int classes = this.classes;
+		BitSet starts = new BitSet(text.length());
+		int state = 0;
+		for(int i = 0; i < text.length(); i++) {
+			char letter = text.charAt(i);
+			state = delta[state * classes + class_map[letter >>> 8][letter & 0xFF]];
+			//every literal ending here
+			for(int found = finals[state] ? state : dict[state]; found > 0; found = dict[found]) {
+				starts.set(i + 1 - depth[found]);
+			}
+		}
+		return starts;
+	}
+	
+	/**
+	 * walk the trie from the root over text[from, to)
+	 * @param text text to scan
+	 * @param from offset to start the match at
+	 * @param to offset to stop scanning at
+	 * @return offset just past the longest literal, -1 if none matched
+	 */
+	public int longestMatchEnd(CharSequence text, int from, int to) {
+		int state = 0;
+		int best = -1;
+		for(int i = from; i < to; i++) {
+			char letter = text.charAt(i);
+			state = this.trie[state * this.classes + this.class_map[letter >>> 8][letter & 0xFF]];
+			if(state == DFA.DEAD) {
+				break;
+			}
+			if(this.finals[state]) {
+				best = i + 1;
+				if(this.exhausted[state]) {
+					break;
+				}
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * scan position in the trie
+	 */
+	public class Cursor implements Regex_Matcher {
+		
+		private int current;
+		
+		/**
+		 * setup cursor at the root
+		 */
+		public Cursor() {
+			this.current = 0;
+		}
+		
+		/**
+		 * goto the next state via the given letter
+		 * @param letter value to transition on
+		 */
+		@Override
+		public void gotoNext(char letter) {
+			if(this.current != DFA.DEAD) {
+				this.current = trie[this.current * classes + class_map[letter >>> 8][letter & 0xFF]];
+			}
+		}
+		
+		/**
+		 * check if current state ends a literal
+		 * @return true: in an accept state, false: not
+		 */
+		@Override
+		public boolean atFinal() {
+			return this.current != DFA.DEAD && finals[this.current];
+		}
+		
+		/**
+		 * check if the cursor is dead
+		 * @return true: in a dead state, false: not
+		 */
+		@Override
+		public boolean atDead() {
+			return this.current == DFA.DEAD;
+		}
+		
+		/**
+		 * check if stepping further could still reach an accept state
+		 * @return true: a longer literal is possible, false: it is not
+		 */
+		@Override
+		public boolean canContinue() {
+			return this.current != DFA.DEAD && !exhausted[this.current];
+		}
+		
+		/**
+		 * resets this cursor to the root
+		 */
+		@Override
+		public void reset() {
+			this.current = 0;
+		}
+		
+		/**
+		 * walk the trie from the root over text[from, to)
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return offset just past the longest literal, -1 if none matched
+		 */
+		@Override
+		public int longestMatchEnd(CharSequence text, int from, int to) {
+			this.current = 0;
+			return Aho_Corasick.this.longestMatchEnd(text, from, to);
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package generator.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Alphabet.java
+ * Splits the characters into equivalence classes for one nfa. Two chars
+ * share a class when every transition in the nfa treats them the same, so
+ * automata only need one column per class. Class 0 holds every char the
+ * nfa never transitions on. Classes are kept as sorted char ranges.
+ */
+public class Alphabet {
+	
+	//chars per page of the class map
+	private static final int PAGE_SIZE = 256;
+	
+	//two level char -> class map, pages with no used chars are shared
+	private char[][] pages;
+	//ranges in each class as lo, hi pairs, sorted (empty for class 0)
+	private ArrayList<String> ranges;
+	//every range of every class sorted by lo, with its class (for classesIn)
+	private char[] range_lo;
+	private char[] range_hi;
+	private int[] range_class;
+	
+	/**
+	 * compute the equivalence classes of the given nfa's letters
+	 * (classes are runs of chars between the ends of the nfa's ranges,
+	 * so wide ranges like . cost one class rather than one per char)
+	 * @param nfa machine to compute classes for
+	 */
+	public Alphabet(NFA nfa) {
+		//every point where some range starts or stops
+		TreeSet<Integer> cuts = new TreeSet<Integer>();
+		for(int i = 0; i < nfa.size(); i++) {
+			for(NFA.State.Transition trans : nfa.get(i).getTransitions()) {
+				if(trans.getLetter() != NFA.EPSILON) {
+					cuts.add((int)trans.getLo());
+					cuts.add(trans.getHi() + 1);
+				}
+			}
+		}
+		int[] bounds = new int[cuts.size()];
+		int count = 0;
+		for(int cut : cuts) {
+			bounds[count++] = cut;
+		}
+		//signature of an interval between cuts: every (state, next) pair that transitions on it
+		ArrayList<TreeSet<Long>> signatures = new ArrayList<TreeSet<Long>>();
+		for(int k = 0; k + 1 < bounds.length; k++) {
+			signatures.add(new TreeSet<Long>());
+		}
+		for(int i = 0; i < nfa.size(); i++) {
+			for(NFA.State.Transition trans : nfa.get(i).getTransitions()) {
+				if(trans.getLetter() != NFA.EPSILON) {
+					int from = Arrays.binarySearch(bounds, trans.getLo());
+					int to = Arrays.binarySearch(bounds, trans.getHi() + 1);
+					for(int k = from; k < to; k++) {
+						signatures.get(k).add(((long)i << 32) | trans.getNext());
+					}
+				}
+			}
+		}
+		//intervals with equal signatures share a class (numbered by lowest char)
+		HashMap<TreeSet<Long>, Integer> classes = new HashMap<TreeSet<Long>, Integer>();
+		this.ranges = new ArrayList<String>();
+		this.ranges.add("");
+		char[] empty = new char[PAGE_SIZE];
+		this.pages = new char[Character.MAX_VALUE / PAGE_SIZE + 1][];
+		Arrays.fill(this.pages, empty);
+		//pages a single class covers entirely are shared per class
+		HashMap<Integer, char[]> uniform = new HashMap<Integer, char[]>();
+		for(int k = 0; k < signatures.size(); k++) {
+			TreeSet<Long> signature = signatures.get(k);
+			if(signature.isEmpty()) {
+				continue;
+			}
+			Integer symbol = classes.get(signature);
+			if(symbol == null) {
+				symbol = this.ranges.size();
+				classes.put(signature, symbol);
+				this.ranges.add("");
+			}
+			int lo = bounds[k];
+			int hi = bounds[k+1] - 1;
+			String pairs = this.ranges.get(symbol);
+			if(pairs.length() > 0 && pairs.charAt(pairs.length()-1) == lo - 1) {
+				//runs right after the class' last range, extend it
+				this.ranges.set(symbol, pairs.substring(0, pairs.length()-1) + (char)hi);
+			}
+			else {
+				this.ranges.set(symbol, pairs + (char)lo + (char)hi);
+			}
+			for(int page = lo / PAGE_SIZE; page <= hi / PAGE_SIZE; page++) {
+				int first = page * PAGE_SIZE;
+				int last = first + PAGE_SIZE - 1;
+				if(lo <= first && last <= hi) {
+					char[] shared = uniform.get(symbol);
+					if(shared == null) {
+						shared = new char[PAGE_SIZE];
+						Arrays.fill(shared, (char)(int)symbol);
+						uniform.put(symbol, shared);
+					}
+					this.pages[page] = shared;
+					continue;
+				}
+				if(this.pages[page] == empty) {
+					this.pages[page] = new char[PAGE_SIZE];
+				}
+				for(int letter = Math.max(lo, first); letter <= Math.min(hi, last); letter++) {
+					this.pages[page][letter % PAGE_SIZE] = (char)(int)symbol;
+				}
+			}
+		}
+		if(nfa.isIgnoreCase()) {
+			this.fold_case();
+		}
+		this.index();
+	}
+	
+	/**
+	 * send every char to the class of its case representative (Case_Fold),
+	 * the nfa only transitions on representatives, so this folds the input
+	 * for free in the class map lookup; classes left empty are dropped
+	 */
+	private void fold_case() {
+		char[] map = new char[Character.MAX_VALUE + 1];
+		for(int letter = 0; letter <= Character.MAX_VALUE; letter++) {
+			map[letter] = this.pages[letter / PAGE_SIZE][letter % PAGE_SIZE];
+		}
+		//representatives keep their class, so the order doesn't matter
+		for(int letter = 0; letter <= Character.MAX_VALUE; letter++) {
+			map[letter] = map[Case_Fold.fold((char)letter)];
+		}
+		//renumber the classes still in use, keeping their order
+		boolean[] used = new boolean[this.ranges.size()];
+		for(int letter = 0; letter <= Character.MAX_VALUE; letter++) {
+			used[map[letter]] = true;
+		}
+		int[] renumber = new int[this.ranges.size()];
+		int count = 1;
+		for(int symbol = 1; symbol < used.length; symbol++) {
+			if(used[symbol]) {
+				renumber[symbol] = count++;
+			}
+		}
+		StringBuilder[] pairs = new StringBuilder[count];
+		for(int symbol = 0; symbol < count; symbol++) {
+			pairs[symbol] = new StringBuilder();
+		}
+		char[] empty = new char[PAGE_SIZE];
+		HashMap<Integer, char[]> uniform = new HashMap<Integer, char[]>();
+		for(int letter = 0; letter <= Character.MAX_VALUE; letter++) {
+			int symbol = renumber[map[letter]];
+			map[letter] = (char)symbol;
+			if(symbol == 0) {
+				continue;
+			}
+			StringBuilder run = pairs[symbol];
+			if(run.length() > 0 && run.charAt(run.length()-1) == letter - 1) {
+				run.setCharAt(run.length()-1, (char)letter);
+			}
+			else {
+				run.append((char)letter).append((char)letter);
+			}
+		}
+		for(int page = 0; page < this.pages.length; page++) {
+			char first = map[page * PAGE_SIZE];
+			boolean same = true;
+			for(int letter = page * PAGE_SIZE; letter < (page + 1) * PAGE_SIZE && same; letter++) {
+				same = map[letter] == first;
+			}
+			if(!same) {
+				this.pages[page] = Arrays.copyOfRange(map, page * PAGE_SIZE, (page + 1) * PAGE_SIZE);
+			}
+			else if(first == 0) {
+				this.pages[page] = empty;
+			}
+			else {
+				char[] shared = uniform.get((int)first);
+				if(shared == null) {
+					shared = Arrays.copyOfRange(map, page * PAGE_SIZE, (page + 1) * PAGE_SIZE);
+					uniform.put((int)first, shared);
+				}
+				this.pages[page] = shared;
+			}
+		}
+		this.ranges = new ArrayList<String>();
+		for(int symbol = 0; symbol < count; symbol++) {
+			this.ranges.add(pairs[symbol].toString());
+		}
+	}
+	
+	/**
+	 * give every distinct char of the given string its own class
+	 * (for automata that aren't built from an nfa)
+	 * @param letters chars to classify
+	 */
+	Alphabet(String letters) {
+		this.ranges = new ArrayList<String>();
+		this.ranges.add("");
+		char[] empty = new char[PAGE_SIZE];
+		this.pages = new char[Character.MAX_VALUE / PAGE_SIZE + 1][];
+		Arrays.fill(this.pages, empty);
+		char[] sorted = letters.toCharArray();
+		Arrays.sort(sorted);
+		for(int i = 0; i < sorted.length; i++) {
+			char letter = sorted[i];
+			if(i > 0 && letter == sorted[i-1]) {
+				continue;
+			}
+			int page = letter / PAGE_SIZE;
+			if(this.pages[page] == empty) {
+				this.pages[page] = new char[PAGE_SIZE];
+			}
+			this.pages[page][letter % PAGE_SIZE] = (char)this.ranges.size();
+			this.ranges.add("" + letter + letter);
+		}
+		this.index();
+	}
+	
+	/**
+	 * setup alphabet from an already built class map (used by DFA_Cache)
+	 * @param pages two level class map, indexed [letter >>> 8][letter & 0xFF]
+	 * @param ranges ranges in each class as lo, hi pairs (empty for class 0)
+	 */
+	Alphabet(char[][] pages, ArrayList<String> ranges) {
+		this.pages = pages;
+		this.ranges = ranges;
+		this.index();
+	}
+	
+	/**
+	 * sort every class' ranges by lo so classesIn can binary search them
+	 */
+	private void index() {
+		int count = 0;
+		for(String pairs : this.ranges) {
+			count += pairs.length() / 2;
+		}
+		long[] keyed = new long[count];
+		count = 0;
+		for(int symbol = 1; symbol < this.ranges.size(); symbol++) {
+			String pairs = this.ranges.get(symbol);
+			for(int j = 0; j < pairs.length(); j += 2) {
+				keyed[count++] = ((long)pairs.charAt(j) << 48) | ((long)pairs.charAt(j+1) << 32) | symbol;
+			}
+		}
+		Arrays.sort(keyed);
+		this.range_lo = new char[count];
+		this.range_hi = new char[count];
+		this.range_class = new int[count];
+		for(int i = 0; i < count; i++) {
+			this.range_lo[i] = (char)(keyed[i] >>> 48);
+			this.range_hi[i] = (char)(keyed[i] >>> 32);
+			this.range_class[i] = (int)keyed[i];
+		}
+	}
+	
+	/**
+	 * find every class with a char in [lo, hi]
+	 * @param lo lowest char of the range
+	 * @param hi highest char of the range
+	 * @return the classes, sorted (class 0 left out)
+	 */
+	public int[] classesIn(char lo, char hi) {
+		//first range that ends at or after lo
+		int low = 0;
+		int high = this.range_lo.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(this.range_hi[mid] < lo) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		TreeSet<Integer> found = new TreeSet<Integer>();
+		for(int i = low; i < this.range_lo.length && this.range_lo[i] <= hi; i++) {
+			found.add(this.range_class[i]);
+		}
+		int[] result = new int[found.size()];
+		int count = 0;
+		for(int symbol : found) {
+			result[count++] = symbol;
+		}
+		return result;
+	}
+	
+	/**
+	 * accessor for the class of the given char
+	 * @param letter char to classify
+	 * @return class of the char
+	 */
+	public int classOf(char letter) {
+		return this.pages[letter >>> 8][letter & 0xFF];
+	}
+	
+	/**
+	 * accessor for the raw class map, indexed [letter >>> 8][letter & 0xFF]
+	 * (for hot loops, don't modify)
+	 * @return the class map pages
+	 */
+	public char[][] getPages() {
+		return this.pages;
+	}
+	
+	/**
+	 * accessor for the number of classes (including class 0)
+	 * @return number of classes
+	 */
+	public int size() {
+		return this.ranges.size();
+	}
+	
+	/**
+	 * accessor for a char in the given class
+	 * @param symbol class to get a char from
+	 * @return lowest char in the class, NFA.EPSILON for class 0
+	 */
+	public char getRepresentative(int symbol) {
+		if(symbol == 0) {
+			return NFA.EPSILON;
+		}
+		return this.ranges.get(symbol).charAt(0);
+	}
+	
+	/**
+	 * accessor for the ranges of chars in the given class
+	 * @param symbol class to get the ranges of
+	 * @return lo and hi of each range, two chars per range (empty for class 0)
+	 */
+	public String getRanges(int symbol) {
+		return this.ranges.get(symbol);
+	}
+	
+	/**
+	 * generate string representation of a class
+	 * @param symbol class to describe
+	 * @return the class' ranges in brackets
+	 */
+	public String toString(int symbol) {
+		if(symbol == 0) {
+			return "[other]";
+		}
+		String pairs = this.ranges.get(symbol);
+		StringBuilder result = new StringBuilder("[");
+		for(int i = 0; i < pairs.length(); i += 2) {
+			result.append(pairs.charAt(i));
+			if(pairs.charAt(i+1) != pairs.charAt(i)) {
+				result.append('-').append(pairs.charAt(i+1));
+			}
+		}
+		return result.append("]").toString();
+	}
+}
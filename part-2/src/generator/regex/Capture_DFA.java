@@ -0,0 +1,576 @@
+package generator.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import global.Options;
+
+/**
+ * Capture_DFA.java
+ * Tagged dfa (laurikari) that finds the longest match along with the submatch
+ * of every capture group. Each group's nfa is wrapped in an open and a close
+ * state (NFA.addCapture), a path through the nfa writes the offsets it passes
+ * them at into the group's two tags. A dfa state is the list of nfa states the
+ * live paths are in, highest priority first, and every path keeps its own copy
+ * of each tag in registers (path i, tag t: register i * tags + t). Each
+ * transition carries the register operations that move the tags along with
+ * the paths and write the tags passed on the way, so one pass over the text
+ * gives the end of the match and its groups. States are built on demand into
+ * a bounded cache, as in Lazy_DFA.
+ * Of all paths to the end of the longest match, the groups come from the one
+ * that takes left alternatives first and repeats loops before leaving them.
+ * A loop is never repeated on an empty iteration, so a group in a loop holds
+ * its last non-empty repetition. That differs from java.util.regex, where a
+ * final empty iteration overwrites the group ((a|(a)*b*)+ on "aac" gives
+ * group 1 the empty span at 2 in java and "a" at 1 here).
+ */
+public class Capture_DFA implements Regex_Pattern {
+	
+	//transition that hasn't been built yet
+	private static final int UNKNOWN = -2;
+	//register operations other than copying a register: write the offset, clear the tag
+	private static final int SET = -1;
+	private static final int CLEAR = -2;
+	//tags written on a path that passed no group yet
+	private static final BitSet NONE = new BitSet();
+	
+	//char classes, class map pages and class count
+	private Alphabet alphabet;
+	private char[][] class_map;
+	private int classes;
+	//nfa in a flat form: epsilon targets in priority order, the lettered transitions
+	//and the capture tag of each state
+	private int[][] epsilons;
+	private int[][] symbols;
+	private int[][] targets;
+	private int[] captures;
+	private BitSet nfa_finals;
+	//nfa states that can still reach a final state
+	private BitSet nfa_live;
+	private int nfa_start;
+	//number of capture groups and of tags (an open and a close per group)
+	private int groups;
+	private int tags;
+	//max number of states a cursor caches
+	private int capacity;
+	//sizes and build times (no dfa states are built up front)
+	private Regex_Stats stats;
+	
+	/**
+	 * setup a tagged dfa for the given nfa, no dfa states are built yet
+	 * @param nfa nfa to simulate, with its groups marked by NFA.addCapture
+	 */
+	public Capture_DFA(NFA nfa) {
+		this.alphabet = new Alphabet(nfa);
+		this.class_map = this.alphabet.getPages();
+		this.classes = this.alphabet.size();
+		this.epsilons = new int[nfa.size()][];
+		this.symbols = new int[nfa.size()][];
+		this.targets = new int[nfa.size()][];
+		this.captures = new int[nfa.size()];
+		this.nfa_finals = new BitSet();
+		for(int i = 0; i < nfa.size(); i++) {
+			ArrayList<NFA.State.Transition> trans = nfa.get(i).getTransitions();
+			//a range gives one (class, next) pair per class it holds
+			int[][] classes_in = new int[trans.size()][];
+			int count = 0;
+			int epsilon_count = 0;
+			for(int j = 0; j < trans.size(); j++) {
+				if(trans.get(j).getLetter() != NFA.EPSILON) {
+					classes_in[j] = this.alphabet.classesIn(trans.get(j).getLo(), trans.get(j).getHi());
+					count += classes_in[j].length;
+				}
+				else {
+					epsilon_count++;
+				}
+			}
+			this.epsilons[i] = new int[epsilon_count];
+			this.symbols[i] = new int[count];
+			this.targets[i] = new int[count];
+			count = 0;
+			epsilon_count = 0;
+			for(int j = 0; j < trans.size(); j++) {
+				if(classes_in[j] == null) {
+					this.epsilons[i][epsilon_count++] = trans.get(j).getNext();
+					continue;
+				}
+				for(int symbol : classes_in[j]) {
+					this.symbols[i][count] = symbol;
+					this.targets[i][count] = trans.get(j).getNext();
+					count++;
+				}
+			}
+			this.captures[i] = nfa.get(i).getCapture();
+			if(nfa.get(i).getEnd()) {
+				this.nfa_finals.set(i);
+			}
+		}
+		this.nfa_live = Lazy_DFA.live_states(nfa, this.nfa_finals);
+		this.nfa_start = nfa.getStart();
+		this.groups = nfa.getGroups();
+		this.tags = 2 * this.groups;
+		//room for the start, the current state and one new state at least
+		this.capacity = Math.max(Options.LAZY_CACHE_SIZE, 3);
+		this.stats = new Regex_Stats();
+		this.stats.setNFA(nfa);
+		this.stats.setClasses(this.classes);
+	}
+	
+	/**
+	 * accessor for the number of capture groups
+	 * @return number of groups, numbered from 1 in the order they open
+	 */
+	public int getGroups() {
+		return this.groups;
+	}
+	
+	/**
+	 * accessor for the sizes and build times of this tagged dfa
+	 * @return stats of this tagged dfa
+	 */
+	@Override
+	public Regex_Stats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * make a new cursor with an empty state cache
+	 * @return new cursor over this tagged dfa
+	 */
+	@Override
+	public Cursor matcher() {
+		return new Cursor();
+	}
+	
+	/**
+	 * follow the epsilon transitions from the given nfa states depth first in
+	 * priority order, the first path to reach a state is the one kept
+	 * @param roots nfa states to start from, highest priority first
+	 * @param sources path (of the current dfa state) each root continues
+	 * @param states filled with the reached nfa states that read a letter or are final, in priority order
+	 * @param from filled with the path each reached state continues
+	 * @param written filled with the tags written on the way to each reached state
+	 */
+	private void closure(ArrayList<Integer> roots, ArrayList<Integer> sources,
+			ArrayList<Integer> states, ArrayList<Integer> from, ArrayList<BitSet> written) {
+		BitSet visited = new BitSet();
+		ArrayList<Path> stack = new ArrayList<Path>();
+		for(int i = roots.size() - 1; i >= 0; i--) {
+			stack.add(new Path(roots.get(i), sources.get(i), NONE));
+		}
+		while(!stack.isEmpty()) {
+			Path path = stack.remove(stack.size() - 1);
+			int state = path.state;
+			//states that can't reach a final state never matter
+			if(visited.get(state) || !this.nfa_live.get(state)) {
+				continue;
+			}
+			visited.set(state);
+			BitSet tags = path.written;
+			if(this.captures[state] != -1) {
+				tags = (BitSet)tags.clone();
+				tags.set(this.captures[state]);
+			}
+			if(this.symbols[state].length > 0 || this.nfa_finals.get(state)) {
+				states.add(state);
+				from.add(path.source);
+				written.add(tags);
+			}
+			//pushed backwards so the first epsilon transition is followed first
+			for(int i = this.epsilons[state].length - 1; i >= 0; i--) {
+				stack.add(new Path(this.epsilons[state][i], path.source, tags));
+			}
+		}
+	}
+	
+	/**
+	 * get the register operations of a transition
+	 * @param from path of the old state each new path continues
+	 * @param written tags written on each new path
+	 * @param start true: the transition into the start state (there are no old registers)
+	 * @return source of every new register: an old register, SET or CLEAR
+	 */
+	private int[] operations(ArrayList<Integer> from, ArrayList<BitSet> written, boolean start) {
+		int[] operations = new int[from.size() * this.tags];
+		for(int i = 0; i < from.size(); i++) {
+			for(int t = 0; t < this.tags; t++) {
+				if(written.get(i).get(t)) {
+					operations[i * this.tags + t] = SET;
+				}
+				else {
+					operations[i * this.tags + t] = start ? CLEAR : from.get(i) * this.tags + t;
+				}
+			}
+		}
+		return operations;
+	}
+	
+	/**
+	 * nfa state on the closure's work stack along with where its path came from
+	 */
+	private static class Path {
+		
+		private int state;
+		private int source;
+		private BitSet written;
+		
+		/**
+		 * setup path at the given nfa state
+		 * @param state nfa state the path is at
+		 * @param source path of the old dfa state it continues
+		 * @param written tags written on the way (shared, never modified)
+		 */
+		Path(int state, int source, BitSet written) {
+			this.state = state;
+			this.source = source;
+			this.written = written;
+		}
+	}
+	
+	/**
+	 * scan position in a tagged dfa along with the states it has built so far
+	 * and the tags of every path it is on
+	 */
+	public class Cursor implements Regex_Matcher {
+		
+		//cached dfa states, each an ordered list of nfa states
+		private HashMap<ArrayList<Integer>, Integer> cache_index;
+		private ArrayList<int[]> cache_states;
+		private int[] table;
+		//register operations of each built transition, row per state, column per class
+		private int[][] operations;
+		//path whose tags a final state reports (-1: not final)
+		private int[] accepts;
+		private boolean[] exhausted;
+		private int flushes;
+		//start state, its nfa states and the register operations that enter it
+		private int start;
+		private ArrayList<Integer> start_states;
+		private int[] start_operations;
+		private int current;
+		//chars read since the start
+		private int offset;
+		//tags of every path of the current state, and room for the next state's
+		private int[] registers;
+		private int[] spare;
+		
+		/**
+		 * setup cursor at the start state with only the start state built
+		 */
+		public Cursor() {
+			this.cache_index = new HashMap<ArrayList<Integer>, Integer>();
+			this.cache_states = new ArrayList<int[]>();
+			this.table = new int[0];
+			this.operations = new int[0][];
+			this.accepts = new int[0];
+			this.exhausted = new boolean[0];
+			this.registers = new int[0];
+			this.spare = new int[0];
+			this.flushes = 0;
+			ArrayList<Integer> roots = new ArrayList<Integer>();
+			ArrayList<Integer> sources = new ArrayList<Integer>();
+			roots.add(nfa_start);
+			sources.add(0);
+			ArrayList<Integer> states = new ArrayList<Integer>();
+			ArrayList<Integer> from = new ArrayList<Integer>();
+			ArrayList<BitSet> written = new ArrayList<BitSet>();
+			closure(roots, sources, states, from, written);
+			this.start_states = states;
+			this.start = this.add(states);
+			this.start_operations = Capture_DFA.this.operations(from, written, true);
+			this.reset();
+		}
+		
+		/**
+		 * goto the next state via the given letter, building it if needed
+		 * @param letter value to transition on
+		 */
+		@Override
+		public void gotoNext(char letter) {
+			if(this.current != DFA.DEAD) {
+				int symbol = class_map[letter >>> 8][letter & 0xFF];
+				int cell = this.current * classes + symbol;
+				if(this.table[cell] == UNKNOWN) {
+					cell = this.build(this.current, symbol);
+				}
+				this.current = this.table[cell];
+				this.offset++;
+				if(this.current != DFA.DEAD) {
+					this.move(this.operations[cell], this.offset);
+				}
+			}
+		}
+		
+		/**
+		 * run the whole longest-match loop from the start state over text[from, to),
+		 * building missing states as they are reached
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return offset just past the longest non-empty match, -1 if nothing matched
+		 */
+		@Override
+		public int longestMatchEnd(CharSequence text, int from, int to) {
+			Regex_Match match = this.longestMatch(text, from, to);
+			return match == null ? -1 : match.getEnd();
+		}
+		
+		/**
+		 * run the longest-match loop from the start state over text[from, to),
+		 * keeping the groups of the longest match found so far
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return the longest non-empty match with its groups, null if nothing matched
+		 */
+		public Regex_Match longestMatch(CharSequence text, int from, int to) {
+			int[] table = this.table;
+			int state = this.start;
+			this.move(this.start_operations, from);
+			int best = -1;
+			int[] groups = new int[tags];
+			for(int i = from; i < to; i++) {
+				char letter = text.charAt(i);
+				int symbol = class_map[letter >>> 8][letter & 0xFF];
+				int cell = state * classes + symbol;
+				if(table[cell] == UNKNOWN) {
+					cell = this.build(state, symbol);
+					//building may grow or flush the cache
+					table = this.table;
+				}
+				state = table[cell];
+				if(state == DFA.DEAD) {
+					break;
+				}
+				this.move(this.operations[cell], i + 1);
+				if(this.accepts[state] != -1) {
+					best = i + 1;
+					this.report(this.accepts[state], groups);
+					//nothing longer can match
+					if(this.exhausted[state]) {
+						break;
+					}
+				}
+			}
+			this.reset();
+			return best == -1 ? null : new Regex_Match(from, best, groups);
+		}
+		
+		/**
+		 * check if current state is a final state
+		 * @return true: this dfa is in an accept state, false: it is not
+		 */
+		@Override
+		public boolean atFinal() {
+			return this.current != DFA.DEAD && this.accepts[this.current] != -1;
+		}
+		
+		/**
+		 * check if the dfa is dead
+		 * @return true: this dfa is in a dead state, false: it is not
+		 */
+		@Override
+		public boolean atDead() {
+			return this.current == DFA.DEAD;
+		}
+		
+		/**
+		 * check if stepping further could still reach an accept state
+		 * @return true: a longer match is possible, false: it is not
+		 */
+		@Override
+		public boolean canContinue() {
+			return this.current != DFA.DEAD && !this.exhausted[this.current];
+		}
+		
+		/**
+		 * resets this cursor's current state to the start
+		 */
+		@Override
+		public void reset() {
+			this.current = this.start;
+			this.offset = 0;
+			this.move(this.start_operations, 0);
+		}
+		
+		/**
+		 * get the groups of the current state's match, if it is final
+		 * (offsets count the chars read since the last reset)
+		 * @return start and end offset of each group (-1 if the group didn't match), null if not final
+		 */
+		public int[] getGroups() {
+			if(!this.atFinal()) {
+				return null;
+			}
+			int[] groups = new int[tags];
+			this.report(this.accepts[this.current], groups);
+			return groups;
+		}
+		
+		/**
+		 * accessor for the number of dfa states currently cached
+		 * @return number of cached states
+		 */
+		public int size() {
+			return this.cache_states.size();
+		}
+		
+		/**
+		 * accessor for the number of times the cache was flushed
+		 * @return number of cache flushes
+		 */
+		public int getFlushes() {
+			return this.flushes;
+		}
+		
+		/**
+		 * copy the groups of a path out of the registers
+		 * @param path path that reached the final state
+		 * @param groups filled with the start and end offset of each group (-1 if the group didn't match)
+		 */
+		private void report(int path, int[] groups) {
+			for(int g = 0; g < tags; g += 2) {
+				int open = this.registers[path * tags + g];
+				int close = this.registers[path * tags + g + 1];
+				boolean matched = open != -1 && close != -1;
+				groups[g] = matched ? open : -1;
+				groups[g + 1] = matched ? close : -1;
+			}
+		}
+		
+		/**
+		 * run a transition's register operations
+		 * @param operations source of every new register
+		 * @param offset offset the written tags get
+		 */
+		private void move(int[] operations, int offset) {
+			int[] registers = this.registers;
+			int[] next = this.spare;
+			for(int r = 0; r < operations.length; r++) {
+				int source = operations[r];
+				if(source >= 0) {
+					next[r] = registers[source];
+				}
+				else {
+					next[r] = source == SET ? offset : -1;
+				}
+			}
+			this.spare = registers;
+			this.registers = next;
+		}
+		
+		/**
+		 * build (and cache) the transition from the given state on the given char class
+		 * @param state cached state to transition from
+		 * @param symbol char class to transition on
+		 * @return table index of the built transition (the state's index may change in a flush)
+		 */
+		private int build(int state, int symbol) {
+			int[] paths = this.cache_states.get(state);
+			ArrayList<Integer> roots = new ArrayList<Integer>();
+			ArrayList<Integer> sources = new ArrayList<Integer>();
+			for(int i = 0; i < paths.length; i++) {
+				int nfa_state = paths[i];
+				for(int j = 0; j < symbols[nfa_state].length; j++) {
+					if(symbols[nfa_state][j] == symbol) {
+						roots.add(targets[nfa_state][j]);
+						sources.add(i);
+					}
+				}
+			}
+			ArrayList<Integer> states = new ArrayList<Integer>();
+			ArrayList<Integer> from = new ArrayList<Integer>();
+			ArrayList<BitSet> written = new ArrayList<BitSet>();
+			closure(roots, sources, states, from, written);
+			int next;
+			if(states.isEmpty()) {
+				next = DFA.DEAD;
+			}
+			else {
+				Integer known = this.cache_index.get(states);
+				if(known != null) {
+					next = known;
+				}
+				else {
+					if(this.cache_states.size() >= capacity) {
+						state = this.flush(state);
+					}
+					next = this.add(states);
+				}
+			}
+			int cell = state * classes + symbol;
+			this.table[cell] = next;
+			this.operations[cell] = Capture_DFA.this.operations(from, written, false);
+			return cell;
+		}
+		
+		/**
+		 * drop every cached state except the start and the given state
+		 * (a state's registers only depend on its nfa states, so the
+		 * current registers stay valid)
+		 * @param state cached state that must survive the flush
+		 * @return the new index of the surviving state
+		 */
+		private int flush(int state) {
+			ArrayList<Integer> keep = new ArrayList<Integer>();
+			for(int nfa_state : this.cache_states.get(state)) {
+				keep.add(nfa_state);
+			}
+			this.cache_index.clear();
+			this.cache_states.clear();
+			this.flushes++;
+			
+			if(Options.DEBUG) {
+				System.out.println("   [Capture_DFA] state cache full, flushing...");
+			}
+			
+			this.start = this.add(this.start_states);
+			Integer kept = this.cache_index.get(keep);
+			if(kept == null) {
+				kept = this.add(keep);
+			}
+			return kept;
+		}
+		
+		/**
+		 * add a new state to the cache with no transitions built
+		 * @param states nfa states the new state stands for, highest priority first
+		 * @return index of the new state
+		 */
+		private int add(ArrayList<Integer> states) {
+			int index = this.cache_states.size();
+			//grow the table a row at a time (doubling)
+			if((index + 1) * classes > this.table.length) {
+				int rows = Math.min(Math.max(2 * (index + 1), 8), capacity);
+				this.table = Arrays.copyOf(this.table, rows * classes);
+				this.operations = Arrays.copyOf(this.operations, rows * classes);
+				this.accepts = Arrays.copyOf(this.accepts, rows);
+				this.exhausted = Arrays.copyOf(this.exhausted, rows);
+			}
+			Arrays.fill(this.table, index * classes, (index + 1) * classes, UNKNOWN);
+			Arrays.fill(this.operations, index * classes, (index + 1) * classes, null);
+			int[] paths = new int[states.size()];
+			this.accepts[index] = -1;
+			//every state in the list is live, so any lettered transition can lead to an accept
+			boolean out = false;
+			for(int i = 0; i < paths.length; i++) {
+				paths[i] = states.get(i);
+				if(this.accepts[index] == -1 && nfa_finals.get(paths[i])) {
+					this.accepts[index] = i;
+				}
+				out |= symbols[paths[i]].length > 0;
+			}
+			this.exhausted[index] = !out;
+			//registers of the biggest state
+			if(paths.length * tags > this.registers.length) {
+				this.registers = Arrays.copyOf(this.registers, paths.length * tags);
+				this.spare = Arrays.copyOf(this.spare, paths.length * tags);
+			}
+			this.cache_states.add(paths);
+			this.cache_index.put(states, index);
+			return index;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package generator.regex;
+
+/**
+ * Case_Fold.java
+ * Simple case folding table for case-insensitive patterns. Every char folds
+ * to one representative of its case class (lower case of its upper case, so
+ * 'K', 'k' and the kelvin sign all fold to 'k'). A case-insensitive nfa only
+ * transitions on representatives (NFA.foldCase), and its Alphabet sends every
+ * other char to the class of its representative, so the input is folded by
+ * the class map lookup the scan loops already do.
+ */
+public class Case_Fold {
+	
+	//representative of every char
+	private static final char[] FOLD = new char[Character.MAX_VALUE + 1];
+	//number of representatives below each char (for bridging gaps in fold)
+	private static final int[] FIXED_BELOW = new int[Character.MAX_VALUE + 2];
+	
+	static {
+		for(int c = 0; c <= Character.MAX_VALUE; c++) {
+			FOLD[c] = Character.toLowerCase(Character.toUpperCase((char)c));
+		}
+		//a few chars take two steps to settle, fold until every representative is its own
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int c = 0; c <= Character.MAX_VALUE; c++) {
+				if(FOLD[FOLD[c]] != FOLD[c]) {
+					FOLD[c] = FOLD[FOLD[c]];
+					changed = true;
+				}
+			}
+		}
+		for(int c = 0; c <= Character.MAX_VALUE; c++) {
+			FIXED_BELOW[c+1] = FIXED_BELOW[c] + (FOLD[c] == c ? 1 : 0);
+		}
+	}
+	
+	/**
+	 * accessor for the representative of a char
+	 * @param letter char to fold
+	 * @return the char its case class folds to
+	 */
+	public static char fold(char letter) {
+		return FOLD[letter];
+	}
+	
+	/**
+	 * check if a char is the representative of its case class
+	 * @param letter char to check
+	 * @return true: the char folds to itself, false: it doesn't
+	 */
+	public static boolean isFixed(char letter) {
+		return FOLD[letter] == letter;
+	}
+	
+	/**
+	 * fold a range of chars to the representatives of their case classes
+	 * (a gap between two representatives is filled in when it holds only chars
+	 * folding back into the result, so . stays one range instead of hundreds)
+	 * @param lo lowest char of the range
+	 * @param hi highest char of the range
+	 * @return ranges holding the representatives of the chars in [lo, hi]
+	 */
+	public static Char_Ranges fold(char lo, char hi) {
+		Char_Ranges result = new Char_Ranges();
+		if(lo == hi) {
+			result.add(FOLD[lo]);
+			return result;
+		}
+		boolean[] image = new boolean[Character.MAX_VALUE + 1];
+		for(int c = lo; c <= hi; c++) {
+			image[FOLD[c]] = true;
+		}
+		int start = -1;
+		int end = -1;
+		for(int c = 0; c <= Character.MAX_VALUE; c++) {
+			if(!image[c]) {
+				continue;
+			}
+			if(start >= 0 && !bridges(end + 1, c - 1, image)) {
+				result.add((char)start, (char)end);
+				start = -1;
+			}
+			if(start < 0) {
+				start = c;
+			}
+			end = c;
+		}
+		if(start >= 0) {
+			result.add((char)start, (char)end);
+		}
+		return result;
+	}
+	
+	/**
+	 * get every char that folds into a range (the case closure of its representatives)
+	 * @param lo lowest char of the range
+	 * @param hi highest char of the range
+	 * @return ranges of the chars whose representative is in [lo, hi]
+	 */
+	public static Char_Ranges unfold(char lo, char hi) {
+		Char_Ranges result = new Char_Ranges();
+		int start = -1;
+		for(int c = 0; c <= Character.MAX_VALUE + 1; c++) {
+			boolean in = c <= Character.MAX_VALUE && FOLD[c] >= lo && FOLD[c] <= hi;
+			if(in && start < 0) {
+				start = c;
+			}
+			else if(!in && start >= 0) {
+				result.add((char)start, (char)(c - 1));
+				start = -1;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * get every case of every char in a set of ranges
+	 * @param ranges ranges to close
+	 * @return ranges holding each char whose representative is one of a char in the given ranges
+	 */
+	public static Char_Ranges close(Char_Ranges ranges) {
+		Char_Ranges result = new Char_Ranges();
+		for(int i = 0; i < ranges.size(); i++) {
+			Char_Ranges folded = fold(ranges.getLo(i), ranges.getHi(i));
+			for(int j = 0; j < folded.size(); j++) {
+				result.addAll(unfold(folded.getLo(j), folded.getHi(j)));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * check if a gap between two chars of a folded range can be filled in
+	 * @param lo first char of the gap
+	 * @param hi last char of the gap
+	 * @param image representatives in the folded range
+	 * @return true: no char of the gap is a representative and each folds into the range
+	 */
+	private static boolean bridges(int lo, int hi, boolean[] image) {
+		if(FIXED_BELOW[hi+1] - FIXED_BELOW[lo] > 0) {
+			return false;
+		}
+		for(int c = lo; c <= hi; c++) {
+			if(!image[FOLD[c]]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
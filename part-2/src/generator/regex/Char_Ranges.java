@@ -0,0 +1,161 @@
+package generator.regex;
+
+import java.util.ArrayList;
+
+/**
+ * Char_Ranges.java
+ * Set of chars kept as sorted, disjoint [lo, hi] ranges, so a char class
+ * costs one nfa transition per range instead of one per char.
+ */
+public class Char_Ranges {
+	
+	//lowest char a range can hold (NFA.EPSILON is never a letter)
+	public static final char MIN_CHAR = '\u0001';
+	public static final char MAX_CHAR = Character.MAX_VALUE;
+	
+	//{lo, hi} of each range, sorted and disjoint
+	private ArrayList<char[]> ranges;
+	
+	/**
+	 * setup empty set
+	 */
+	public Char_Ranges() {
+		this.ranges = new ArrayList<char[]>();
+	}
+	
+	/**
+	 * make the set of every char (what . matches)
+	 * @return set of every char but NFA.EPSILON
+	 */
+	public static Char_Ranges all() {
+		Char_Ranges result = new Char_Ranges();
+		result.add(MIN_CHAR, MAX_CHAR);
+		return result;
+	}
+	
+	/**
+	 * add a char to the set
+	 * @param letter char to add
+	 */
+	public void add(char letter) {
+		this.add(letter, letter);
+	}
+	
+	/**
+	 * add every char in [lo, hi] to the set
+	 * @param lo lowest char to add
+	 * @param hi highest char to add
+	 */
+	public void add(char lo, char hi) {
+		lo = (char)Math.max(lo, MIN_CHAR);
+		if(lo > hi) {
+			return;
+		}
+		//ranges that overlap or touch [lo, hi] are merged into it
+		ArrayList<char[]> result = new ArrayList<char[]>();
+		int i = 0;
+		while(i < this.ranges.size() && this.ranges.get(i)[1] + 1 < lo) {
+			result.add(this.ranges.get(i++));
+		}
+		while(i < this.ranges.size() && this.ranges.get(i)[0] <= hi + 1) {
+			lo = (char)Math.min(lo, this.ranges.get(i)[0]);
+			hi = (char)Math.max(hi, this.ranges.get(i)[1]);
+			i++;
+		}
+		result.add(new char[] {lo, hi});
+		while(i < this.ranges.size()) {
+			result.add(this.ranges.get(i++));
+		}
+		this.ranges = result;
+	}
+	
+	/**
+	 * add every char of another set to this one
+	 * @param other set to add
+	 */
+	public void addAll(Char_Ranges other) {
+		for(char[] range : other.ranges) {
+			this.add(range[0], range[1]);
+		}
+	}
+	
+	/**
+	 * make the set of chars in this set but not in another
+	 * @param other chars to leave out
+	 * @return new set with the difference
+	 */
+	public Char_Ranges minus(Char_Ranges other) {
+		Char_Ranges result = new Char_Ranges();
+		for(char[] range : this.ranges) {
+			int lo = range[0];
+			for(char[] cut : other.ranges) {
+				if(cut[1] < lo || cut[0] > range[1]) {
+					continue;
+				}
+				if(cut[0] > lo) {
+					result.add((char)lo, (char)(cut[0] - 1));
+				}
+				lo = cut[1] + 1;
+			}
+			if(lo <= range[1]) {
+				result.add((char)lo, range[1]);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * check if the set holds a char
+	 * @param letter char to check
+	 * @return true: letter is in the set, false: it isn't
+	 */
+	public boolean contains(char letter) {
+		for(char[] range : this.ranges) {
+			if(range[0] <= letter && letter <= range[1]) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * accessor for the number of ranges
+	 * @return number of ranges
+	 */
+	public int size() {
+		return this.ranges.size();
+	}
+	
+	/**
+	 * accessor for the lowest char of a range
+	 * @param index range to look at
+	 * @return lo of the range
+	 */
+	public char getLo(int index) {
+		return this.ranges.get(index)[0];
+	}
+	
+	/**
+	 * accessor for the highest char of a range
+	 * @param index range to look at
+	 * @return hi of the range
+	 */
+	public char getHi(int index) {
+		return this.ranges.get(index)[1];
+	}
+	
+	/**
+	 * generate string representation of the set
+	 * @return the ranges in brackets
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder("[");
+		for(char[] range : this.ranges) {
+			result.append(range[0]);
+			if(range[1] != range[0]) {
+				result.append('-').append(range[1]);
+			}
+		}
+		return result.append("]").toString();
+	}
+}
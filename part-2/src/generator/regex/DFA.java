@@ -1,16 +1,46 @@
 package generator.regex;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import global.Options;
 
 /**
  * DFA.java
  * DFA capable of processing input text.
+ * The automaton doesn't change once built, so one dfa can be shared by
+ * any number of threads; each scan steps through its own Cursor.
  */
-public class DFA {
+public class DFA implements Regex_Pattern {
+	
+	//index of the dead state (no transition exists)
+	public static final int DEAD = -1;
 	
 	private ArrayList<State> states;
-	private int current;
+	//number of states produced by subset construction (before minimization)
+	private int unminimized_size;
+	//char equivalence classes of the nfa this dfa was built from
+	private Alphabet alphabet;
+	//class map pages and class count (copied out of alphabet for the hot loop)
+	private char[][] class_map;
+	private int classes;
+	//frozen transition table, row per state, column per char class
+	private int[] table;
+	//final flag for each state
+	private boolean[] finals;
+	//pattern id each state accepts (-1: not final), the lowest id wins a tie
+	private int[] accept;
+	//sizes and build times
+	private Regex_Stats stats;
+	//states with no transition left once dead ends are pruned (no further accept possible)
+	private boolean[] exhausted;
 	
 	/**
 	 * setup dfa with given alphabet and build it with given nfa
@@ -18,195 +48,639 @@ public class DFA {
 	 * @param nfa nfa to build this dfa from
 	 */
 	public DFA(NFA nfa) {
+		this(nfa, false, 0);
+	}
+	
+	/**
+	 * setup dfa from the given nfa, optionally unanchored: a match may start
+	 * after any number of chars (the regex behaves as if prefixed with any-char*),
+	 * and a state is final right after the last char of a non-empty match
+	 * @param nfa nfa to build this dfa from
+	 * @param unanchored true: matches may start anywhere, false: only at the start
+	 * @param budget max number of states subset construction may make (0: no limit)
+	 * @throws DFA_Budget_Exception thrown if the dfa needs more states than the budget
+	 */
+	DFA(NFA nfa, boolean unanchored, int budget) {
 		this.states = new ArrayList<State>();
-		this.current = 0;
-		this.build_from_nfa(nfa);
+		this.build_from_nfa(nfa, unanchored, budget);
+	}
+	
+	/**
+	 * setup dfa from an already built table (used when loading from DFA_Cache)
+	 * @param alphabet char classes the table columns stand for
+	 * @param table transition table, row per state, column per char class
+	 * @param finals final flag for each state
+	 * @param unminimized_size number of states before minimization
+	 */
+	DFA(Alphabet alphabet, int[] table, boolean[] finals, int unminimized_size) {
+		this.states = new ArrayList<State>();
+		this.alphabet = alphabet;
+		this.class_map = alphabet.getPages();
+		this.classes = alphabet.size();
+		this.table = table;
+		this.finals = finals;
+		this.accept = new int[finals.length];
+		for(int i = 0; i < finals.length; i++) {
+			this.accept[i] = finals[i] ? 0 : -1;
+		}
+		this.unminimized_size = unminimized_size;
+		this.prune();
+		this.stats = new Regex_Stats();
+		this.stats.setDFA(unminimized_size, this.size(), this.classes);
 	}
 	
 	/**
 	 * build the dfa from a given nfa
 	 * @param nfa nfa to build from
+	 * @param unanchored true: matches may start anywhere, false: only at the start
+	 * @param budget max number of states subset construction may make (0: no limit)
 	 */
-	private void build_from_nfa(NFA nfa) {
-		ArrayList<State> table = convert_nfa(nfa);
+	private void build_from_nfa(NFA nfa, boolean unanchored, int budget) {
+		this.stats = new Regex_Stats();
+		this.stats.setNFA(nfa);
+		long time = System.nanoTime();
+		this.alphabet = new Alphabet(nfa);
+		this.class_map = this.alphabet.getPages();
+		this.classes = this.alphabet.size();
+		ArrayList<State> table = convert_nfa(nfa, unanchored, budget);
 		this.states = table;
+		this.unminimized_size = table.size();
+		this.freeze();
+		this.stats.setSubsetTime(System.nanoTime() - time);
+		if(Options.MINIMIZE) {
+			time = System.nanoTime();
+			this.minimize();
+			this.stats.setMinimizeTime(System.nanoTime() - time);
+			
+			if(Options.DEBUG) {
+				System.out.println("   [DFA] minimized " + this.unminimized_size + " -> " + this.size() + " states");
+			}
+		}
+		this.prune();
+		this.stats.setDFA(this.unminimized_size, this.size(), this.classes);
 	}
 	
 	/**
-	 * goto the next state via the given letter
+	 * flatten the state list into a dense transition table
+	 * (missing transitions go to the dead state)
 	 */
-	public void gotoNext(char letter) {
-		//if already at invalid state
-		if(this.current >= 0) {
-			State s = this.states.get(this.current);
-			int dfa_index = -1;
-			//find transitions for given letter
-			for(int i = 0; i < s.getTransitions().size(); i++) {
-				if(s.getTransitions().get(i).getLetter() == letter) {
-					dfa_index = s.getTransitions().get(i).getNext();
-					break;
+	private void freeze() {
+		this.table = new int[this.states.size() * this.classes];
+		this.finals = new boolean[this.states.size()];
+		this.accept = new int[this.states.size()];
+		for(int i = 0; i < this.states.size(); i++) {
+			State s = this.states.get(i);
+			for(int j = 0; j < this.classes; j++) {
+				this.table[i * this.classes + j] = s.getNext(j);
+			}
+			this.finals[i] = s.getEnd();
+			this.accept[i] = s.getAccept();
+		}
+	}
+	
+	/**
+	 * find the states that can still reach a final state, send every transition
+	 * into one that can't to the dead state and flag the states left with no
+	 * transitions, so scans can stop as soon as they reach one
+	 */
+	private void prune() {
+		int n = this.finals.length;
+		//reverse edges, counting sort by target
+		int[] in_start = new int[n + 1];
+		for(int i = 0; i < this.table.length; i++) {
+			if(this.table[i] != DEAD) {
+				in_start[this.table[i] + 1]++;
+			}
+		}
+		for(int q = 1; q <= n; q++) {
+			in_start[q] += in_start[q-1];
+		}
+		int[] fill = in_start.clone();
+		int[] in = new int[in_start[n]];
+		for(int i = 0; i < this.table.length; i++) {
+			if(this.table[i] != DEAD) {
+				in[fill[this.table[i]]++] = i / this.classes;
+			}
+		}
+		
+		//walk backwards from the final states
+		boolean[] live = new boolean[n];
+		int[] stack = new int[n];
+		int top = 0;
+		for(int q = 0; q < n; q++) {
+			if(this.finals[q]) {
+				live[q] = true;
+				stack[top++] = q;
+			}
+		}
+		while(top > 0) {
+			int q = stack[--top];
+			for(int k = in_start[q]; k < in_start[q+1]; k++) {
+				if(!live[in[k]]) {
+					live[in[k]] = true;
+					stack[top++] = in[k];
+				}
+			}
+		}
+		
+		int pruned = 0;
+		this.exhausted = new boolean[n];
+		for(int q = 0; q < n; q++) {
+			boolean out = false;
+			for(int a = 0; a < this.classes; a++) {
+				int next = this.table[q * this.classes + a];
+				if(next != DEAD && !live[next]) {
+					this.table[q * this.classes + a] = DEAD;
+					next = DEAD;
+					pruned++;
+				}
+				out |= next != DEAD;
+			}
+			this.exhausted[q] = !out;
+		}
+		
+		if(Options.DEBUG && pruned > 0) {
+			System.out.println("   [DFA] pruned " + pruned + " transitions that can't reach a final state");
+		}
+	}
+	
+	/**
+	 * minimize the frozen table with hopcroft's partition refinement
+	 * and renumber the remaining states breadth first from the start
+	 * (so equivalent regexes produce identical tables)
+	 */
+	private void minimize() {
+		int n = this.finals.length;
+		//make the dfa complete, the dead state gets a real index
+		int sink = n;
+		int total = n + 1;
+		
+		//inverse transitions for each (symbol, target) pair, counting sort by key
+		int[] inv_start = new int[this.classes * total + 1];
+		int[] inv = new int[this.classes * total];
+		for(int q = 0; q < total; q++) {
+			for(int a = 0; a < this.classes; a++) {
+				inv_start[a * total + this.target(q, a, sink) + 1]++;
+			}
+		}
+		for(int i = 1; i < inv_start.length; i++) {
+			inv_start[i] += inv_start[i-1];
+		}
+		int[] fill = inv_start.clone();
+		for(int q = 0; q < total; q++) {
+			for(int a = 0; a < this.classes; a++) {
+				inv[fill[a * total + this.target(q, a, sink)]++] = q;
+			}
+		}
+		
+		//refinable partition: each block is a contiguous range of elems
+		int[] elems = new int[total];
+		int[] loc = new int[total];
+		int[] block_of = new int[total];
+		int[] first = new int[total];
+		int[] end = new int[total];
+		int[] marked = new int[total];
+		int blocks = 0;
+		//initial partition: final states grouped by pattern id, then everything else
+		long[] keyed = new long[total];
+		for(int q = 0; q < total; q++) {
+			int key = q == sink ? -1 : this.accept[q];
+			keyed[q] = ((long)(key + 1) << 32) | q;
+		}
+		Arrays.sort(keyed);
+		for(int pos = 0; pos < total; pos++) {
+			int q = (int)keyed[pos];
+			if(pos == 0 || (keyed[pos] >>> 32) != (keyed[pos-1] >>> 32)) {
+				first[blocks] = pos;
+				blocks++;
+			}
+			elems[pos] = q;
+			loc[q] = pos;
+			block_of[q] = blocks - 1;
+			end[blocks - 1] = pos + 1;
+		}
+		
+		//blocks still to split against
+		int[] work = new int[total];
+		boolean[] in_work = new boolean[total];
+		int work_size = 0;
+		for(int b = 0; b < blocks; b++) {
+			work[work_size++] = b;
+			in_work[b] = true;
+		}
+		
+		int[] splitter = new int[total];
+		int[] touched = new int[total];
+		while(work_size > 0) {
+			int b = work[--work_size];
+			in_work[b] = false;
+			//copy the splitter, it may be split while it is used
+			int count = end[b] - first[b];
+			System.arraycopy(elems, first[b], splitter, 0, count);
+			for(int a = 0; a < this.classes; a++) {
+				int touched_count = 0;
+				//mark every state that goes into the splitter on a
+				for(int i = 0; i < count; i++) {
+					int key = a * total + splitter[i];
+					for(int k = inv_start[key]; k < inv_start[key+1]; k++) {
+						int p = inv[k];
+						int y = block_of[p];
+						int mark_pos = first[y] + marked[y];
+						if(loc[p] >= mark_pos) {
+							if(marked[y] == 0) {
+								touched[touched_count++] = y;
+							}
+							//move p to the marked front of its block
+							int other = elems[mark_pos];
+							elems[mark_pos] = p;
+							elems[loc[p]] = other;
+							loc[other] = loc[p];
+							loc[p] = mark_pos;
+							marked[y]++;
+						}
+					}
+				}
+				//split every partially marked block
+				for(int t = 0; t < touched_count; t++) {
+					int y = touched[t];
+					int m = marked[y];
+					marked[y] = 0;
+					if(m < end[y] - first[y]) {
+						int z = blocks++;
+						first[z] = first[y];
+						end[z] = first[y] + m;
+						first[y] = end[z];
+						for(int i = first[z]; i < end[z]; i++) {
+							block_of[elems[i]] = z;
+						}
+						//hopcroft: only the smaller half is needed unless y is still pending
+						if(in_work[y] || m <= end[y] - first[y]) {
+							work[work_size++] = z;
+							in_work[z] = true;
+						}
+						else {
+							work[work_size++] = y;
+							in_work[y] = true;
+						}
+					}
 				}
 			}
-			this.current = dfa_index;
 		}
+		
+		//number the blocks breadth first from the start, dropping the dead block
+		int dead_block = block_of[sink];
+		int[] number = new int[blocks];
+		for(int i = 0; i < blocks; i++) {
+			number[i] = DEAD;
+		}
+		int[] order = new int[blocks];
+		int size = 0;
+		number[block_of[0]] = size;
+		order[size++] = block_of[0];
+		for(int i = 0; i < size; i++) {
+			int rep = elems[first[order[i]]];
+			for(int a = 0; a < this.classes; a++) {
+				int tb = block_of[this.target(rep, a, sink)];
+				if(tb != dead_block && number[tb] == DEAD) {
+					number[tb] = size;
+					order[size++] = tb;
+				}
+			}
+		}
+		
+		//rebuild the table, finals and state list for the minimal dfa
+		int[] new_table = new int[size * this.classes];
+		boolean[] new_finals = new boolean[size];
+		int[] new_accept = new int[size];
+		ArrayList<State> new_states = new ArrayList<State>();
+		for(int i = 0; i < size; i++) {
+			int b = order[i];
+			int rep = elems[first[b]];
+			State s = new State();
+			//merged dfa state stands for every nfa state of its members
+			BitSet merged = new BitSet();
+			for(int j = first[b]; j < end[b]; j++) {
+				if(elems[j] != sink) {
+					merged.or(this.states.get(elems[j]).getStatesSet());
+				}
+			}
+			s.setStatesSet(merged);
+			for(int a = 0; a < this.classes; a++) {
+				int tb = block_of[this.target(rep, a, sink)];
+				int next = tb == dead_block ? DEAD : number[tb];
+				new_table[i * this.classes + a] = next;
+				s.setNext(a, next);
+			}
+			new_finals[i] = rep != sink && this.finals[rep];
+			new_accept[i] = rep != sink ? this.accept[rep] : -1;
+			s.setEnd(new_finals[i]);
+			s.setAccept(new_accept[i]);
+			new_states.add(s);
+		}
+		this.table = new_table;
+		this.finals = new_finals;
+		this.accept = new_accept;
+		this.states = new_states;
 	}
 	
 	/**
-	 * accessor for current index being parsed
-	 * @return current index being parsed
+	 * transition lookup on the complete dfa used by minimize
+	 * @param state state to transition from (sink is the dead state)
+	 * @param symbol char class to transition on
+	 * @param sink index standing in for the dead state
+	 * @return the next state, sink if there is no transition
 	 */
-	public int getCurrent() {
-		return this.current;
+	private int target(int state, int symbol, int sink) {
+		if(state == sink) {
+			return sink;
+		}
+		int next = this.table[state * this.classes + symbol];
+		return next == DEAD ? sink : next;
 	}
 	
 	/**
-	 * check if current state is a final state
-	 * @return true: this dfa is in an accept state, fase: it is not
+	 * accessor for the number of states in this dfa
+	 * @return number of states in this dfa
 	 */
-	public boolean atFinal() {
-		if(this.current < 0) {
-			return false;
+	public int size() {
+		return this.finals.length;
+	}
+	
+	/**
+	 * accessor for the number of states subset construction produced
+	 * (equal to size() when minimization is turned off)
+	 * @return number of states before minimization
+	 */
+	public int getUnminimizedSize() {
+		return this.unminimized_size;
+	}
+	
+	/**
+	 * accessor for the char classes this dfa's columns stand for
+	 * @return the alphabet of this dfa
+	 */
+	public Alphabet getAlphabet() {
+		return this.alphabet;
+	}
+	
+	/**
+	 * accessor for the raw transition table (for DFA_Cache, don't modify)
+	 * @return transition table, row per state, column per char class
+	 */
+	int[] getTable() {
+		return this.table;
+	}
+	
+	/**
+	 * accessor for the raw final flags (for DFA_Cache, don't modify)
+	 * @return final flag for each state
+	 */
+	boolean[] getFinals() {
+		return this.finals;
+	}
+	
+	/**
+	 * get the literal every match starts with, following the start state while it
+	 * isn't final and only one char leads out of it (a case-folded class map sends
+	 * more chars to a class than its ranges list, so those dfas have no prefix)
+	 * @return the required prefix, empty if there is none
+	 */
+	String getLiteralPrefix() {
+		int classes = this.alphabet.size();
+		StringBuilder prefix = new StringBuilder();
+		int state = 0;
+		//a state that loops on one letter without ever being final accepts nothing, so cap it
+		while(prefix.length() < 256 && !this.finals[state]) {
+			int next = DEAD;
+			char letter = NFA.EPSILON;
+			for(int symbol = 0; symbol < classes; symbol++) {
+				if(this.table[state * classes + symbol] == DEAD) {
+					continue;
+				}
+				String ranges = this.alphabet.getRanges(symbol);
+				if(next != DEAD || ranges.length() != 2 || ranges.charAt(0) != ranges.charAt(1)) {
+					return prefix.toString();
+				}
+				next = this.table[state * classes + symbol];
+				letter = ranges.charAt(0);
+			}
+			if(next == DEAD) {
+				break;
+			}
+			prefix.append(letter);
+			state = next;
 		}
-		else {
-			return this.states.get(current).getEnd();
+		return prefix.toString();
+	}
+	
+	/**
+	 * accessor for the sizes and build times of this dfa
+	 * @return stats of this dfa
+	 */
+	@Override
+	public Regex_Stats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * accessor for the pattern id a state accepts
+	 * @param state state to check
+	 * @return pattern id, -1 if the state isn't final
+	 */
+	public int getAccept(int state) {
+		return state == DEAD ? -1 : this.accept[state];
+	}
+	
+	/**
+	 * accessor for the states with no transitions left (don't modify)
+	 * @return exhausted flag for each state
+	 */
+	boolean[] getExhausted() {
+		return this.exhausted;
+	}
+	
+	/**
+	 * check if a state can't step anywhere but the dead state
+	 * @param state state to check
+	 * @return true: no further accept is possible from the state, false: it is
+	 */
+	public boolean isExhausted(int state) {
+		return state == DEAD || this.exhausted[state];
+	}
+	
+	/**
+	 * renumber the states by a profile so the hot rows sit together at the front
+	 * of the table (call before the dfa is shared, the start stays state 0)
+	 * @param profile visit counts of this dfa's states
+	 */
+	void renumber(DFA_Profile profile) {
+		int n = this.size();
+		int[] order = profile.order();
+		int[] table = new int[this.table.length];
+		boolean[] finals = new boolean[n];
+		int[] accept = new int[n];
+		boolean[] exhausted = new boolean[n];
+		for(int q = 0; q < n; q++) {
+			int to = order[q];
+			for(int a = 0; a < this.classes; a++) {
+				int next = this.table[q * this.classes + a];
+				table[to * this.classes + a] = next == DEAD ? DEAD : order[next];
+			}
+			finals[to] = this.finals[q];
+			accept[to] = this.accept[q];
+			exhausted[to] = this.exhausted[q];
+		}
+		//nfa states sets follow their states
+		if(this.states.size() == n) {
+			State[] states = new State[n];
+			for(int q = 0; q < n; q++) {
+				states[order[q]] = this.states.get(q);
+			}
+			this.states = new ArrayList<State>(Arrays.asList(states));
+		}
+		this.table = table;
+		this.finals = finals;
+		this.accept = accept;
+		this.exhausted = exhausted;
+		this.stats.setProfiled(true);
+	}
+	
+	/**
+	 * run the whole longest-match loop from the start state over text[from, to)
+	 * in one method, with the tables held in locals
+	 * @param text text to scan
+	 * @param from offset to start the match at
+	 * @param to offset to stop scanning at
+	 * @return offset just past the longest non-empty match, -1 if nothing matched
+	 */
+	public int longestMatchEnd(CharSequence text, int from, int to) {
+		final int[] table = this.table;
+		final boolean[] finals = this.finals;
+		final boolean[] exhausted = this.exhausted;
+		final char[][] class_map = this.class_map;
+		final int classes = this.classes;
+		int state = 0;
+		int best = -1;
+		for(int i = from; i < to; i++) {
+			char letter = text.charAt(i);
+			state = table[state * classes + class_map[letter >>> 8][letter & 0xFF]];
+			if(state == DEAD) {
+				break;
+			}
+			if(finals[state]) {
+				best = i + 1;
+				//nothing longer can match
+				if(exhausted[state]) {
+					break;
+				}
+			}
 		}
+		return best;
 	}
 	
 	/**
-	 * check if the dfa is dead
-	 * @return true: this dfa is in a dead state, false: it is not
+	 * run the longest-match loop and report which pattern the match belongs to
+	 * @param text text to scan
+	 * @param from offset to start the match at
+	 * @param to offset to stop scanning at
+	 * @return the longest non-empty match, null if nothing matched
 	 */
-	public boolean atDead() {
-		return this.current < 0;
+	public Regex_Match longestMatch(CharSequence text, int from, int to) {
+		final int[] table = this.table;
+		final int[] accept = this.accept;
+		final boolean[] exhausted = this.exhausted;
+		final char[][] class_map = this.class_map;
+		final int classes = this.classes;
+		int state = 0;
+		int best = -1;
+		int pattern = -1;
+		for(int i = from; i < to; i++) {
+			char letter = text.charAt(i);
+			state = table[state * classes + class_map[letter >>> 8][letter & 0xFF]];
+			if(state == DEAD) {
+				break;
+			}
+			if(accept[state] >= 0) {
+				best = i + 1;
+				pattern = accept[state];
+				if(exhausted[state]) {
+					break;
+				}
+			}
+		}
+		return best == -1 ? null : new Regex_Match(pattern, from, best);
 	}
 	
 	/**
-	 * resets this nfa's current index to the start
+	 * make a new cursor at the start state of this dfa
+	 * @return new cursor over this dfa
 	 */
-	public void reset() {
-		this.current = 0;
+	@Override
+	public Cursor matcher() {
+		return new Cursor();
 	}
 	
 	/**
 	 * create a transition table from the given nfa
-	 * (minimizes the dfa in the process)
 	 * @param nfa machine to build a transition table for
+	 * @param unanchored true: matches may start anywhere, false: only at the start
+	 * @param budget max number of states to make (0: no limit)
 	 * @return transition table representing the given nfa
+	 * @throws DFA_Budget_Exception thrown if the dfa needs more states than the budget
 	 */
-	private ArrayList<State> convert_nfa(NFA nfa) {
-		//make initial states set
-		ArrayList<Integer> S = new ArrayList<Integer>();
-		//add start to initial states set
-		S.add(nfa.getStart());
-		//make new DFA start state
-		State start = new State();
-		//start = S + all equivalent states
-		start.setStatesSet(epsilonClosure(S, nfa.getStates()));
+	private ArrayList<State> convert_nfa(NFA nfa, boolean unanchored, int budget) {
 		//make DFA transition table
-		ArrayList<State> DTrans = new ArrayList<State>();
-		//add start to DFA
-		DTrans.add(start);
-		//loop terminators
-		boolean keep_going = true;
-		int index = 0;
-		while(keep_going) {
-			//get next state in DFA transition list
-			State T = DTrans.get(index);
-			//get list of states in T
-			ArrayList<Integer> states_set = T.getStatesSet();
-			//for nfa states in current dfa state
-			for(int i = 0; i < states_set.size(); i++) {
-				//get transitions of current state in states_set
-				ArrayList<NFA.State.Transition> transition_list = nfa.get(states_set.get(i)).getTransitions();
-				//for transitions in current nfa state's transition list
-				for(int j = 0; j < transition_list.size(); j++) {
-					//get current transition
-					NFA.State.Transition curr_transition = transition_list.get(j);
-					//if NOT an epsilon transition & the letter doesn't already exist in the current DFA state
-					if(curr_transition.getLetter() != NFA.EPSILON && 
-							!DTrans.get(index).hasTransition(curr_transition.getLetter())) {
-						//create next DFA state
-						ArrayList<Integer> next_dfa_state = new ArrayList<Integer>();
-						//state the current transition goes to to the next dfa state
-						next_dfa_state.add(curr_transition.getNext());
-						//START: transition find
-						//for nfa states in current dfa state (**starting at current nfa state?)
-						for(int k = 0; k < states_set.size(); k++) {
-							//get transition list for currrent states set (in transition find)
-							ArrayList<NFA.State.Transition> transition_list_temp = nfa.get(states_set.get(k)).getTransitions();
-							//for transitions in current nfa state (in transition find)
-							for(int l = 0; l < transition_list_temp.size(); l++) {
-								//get current transition in current nfa state (in transition find)
-								NFA.State.Transition transition_temp = transition_list_temp.get(l);
-								//if the letters match & current temp next state is NOT in the new dfa state
-								if(curr_transition.getLetter() == transition_temp.getLetter() &&
-										!next_dfa_state.contains(transition_temp.getNext())) {
-									//add the temp transition's next state to the new dfa state
-									next_dfa_state.add(transition_temp.getNext());
-								}
-							}
-						}
-						//find all equivalent nfa states in next dfa state
-						next_dfa_state = epsilonClosure(next_dfa_state, nfa.getStates());
-						
-						//dfa state is a dud
-						boolean dud_state = false;
-						int transition_index = -1;
-						//check if any nfa state in next dfa state already exists in the dfa
-						for(int k = 0; k < DTrans.size() && !dud_state; k++) {
-							//get current DTrans state set
-							ArrayList<Integer> nfa_state_set = DTrans.get(k).getStatesSet();
-							//assume equivalancy
-							boolean equivalent = true;
-							//for states in the new dfa state
-							for(int l = 0; l < next_dfa_state.size() && equivalent; l++) {
-								//if doesn't exist in current dfa state
-								if(!nfa_state_set.contains(next_dfa_state.get(l))) {
-									//not equivalent
-									equivalent = false;
-								}
-							}
-							//if equivalency found
-							if(equivalent) {
-								//IS dud state
-								dud_state = true;
-								//found transition index
-								transition_index = k;
-							}
-						}
-						
-						//if next state is NOT a dud
-						if(!dud_state) {
-							//create next DFA state
-							State U = new State();
-							//add states set to the new state
-							U.setStatesSet(next_dfa_state);
-							//add new state to the dfa
-							DTrans.add(U);
-							//add transition index
-							T.addTransition(curr_transition.getLetter(), DTrans.size()-1);
-						}
-						else {
-							T.addTransition(curr_transition.getLetter(), transition_index);
-						}
+		ArrayList<State> DTrans;
+		//epsilon closure of every nfa state, computed once
+		BitSet[] closures = nfa.getClosures();
+		//lettered transitions of every nfa state as (class, next) pairs, a range gives one per class it holds
+		int[][] symbols = new int[nfa.size()][];
+		int[][] targets = new int[nfa.size()][];
+		for(int i = 0; i < nfa.size(); i++) {
+			ArrayList<Integer> symbol_list = new ArrayList<Integer>();
+			ArrayList<Integer> target_list = new ArrayList<Integer>();
+			for(NFA.State.Transition trans : nfa.get(i).getTransitions()) {
+				if(trans.getLetter() != NFA.EPSILON) {
+					for(int symbol : this.alphabet.classesIn(trans.getLo(), trans.getHi())) {
+						symbol_list.add(symbol);
+						target_list.add(trans.getNext());
 					}
 				}
 			}
-			
-			index++;
-			if(index >= DTrans.size()) {
-				keep_going = false;
+			symbols[i] = new int[symbol_list.size()];
+			targets[i] = new int[target_list.size()];
+			for(int j = 0; j < symbols[i].length; j++) {
+				symbols[i][j] = symbol_list.get(j);
+				targets[i][j] = target_list.get(j);
 			}
 		}
+		BitSet start_closure = closures[nfa.getStart()];
+		if(Options.DFA_THREADS > 1 && nfa.size() >= Options.PARALLEL_NFA_STATES) {
+			DTrans = new Parallel_Subset(closures, symbols, targets, start_closure, unanchored, budget).run();
+		}
+		else {
+			DTrans = this.subset(closures, symbols, targets, start_closure, unanchored, budget);
+		}
 		
 		//find what states are final states in the DFA
+		BitSet nfa_finals = new BitSet();
+		for(int i = 0; i < nfa.size(); i++) {
+			if(nfa.get(i).getEnd()) {
+				nfa_finals.set(i);
+			}
+		}
 		for(int i = 0; i < DTrans.size(); i++) {
-			ArrayList<Integer> state_set = DTrans.get(i).getStatesSet();
-			for(int j = 0; j < state_set.size(); j++) {
-				if(nfa.get(state_set.get(j)).getEnd()) {
-					DTrans.get(i).setEnd(true);
-					break;
+			BitSet set = DTrans.get(i).getStatesSet();
+			if(set.intersects(nfa_finals)) {
+				DTrans.get(i).setEnd(true);
+				//lowest pattern id among the nfa end states (untagged counts as 0)
+				int tag = Integer.MAX_VALUE;
+				for(int j = set.nextSetBit(0); j >= 0; j = set.nextSetBit(j+1)) {
+					if(nfa_finals.get(j)) {
+						tag = Math.min(tag, Math.max(nfa.get(j).getTag(), 0));
+					}
 				}
+				DTrans.get(i).setAccept(tag);
 			}
 		}
 		
@@ -215,30 +689,98 @@ public class DFA {
 	}
 	
 	/**
-	 * build set of all states that share an epsilon closure
-	 * @param T set of states that already share an epsilon closure
-	 * @return the set of states that share an epsilon closure
+	 * collect the closed nfa states reachable on each char class from a states set
+	 * @param states_set nfa states of the dfa state to move from
+	 * @param closures epsilon closure of every nfa state
+	 * @param symbols char class of each lettered transition, per nfa state
+	 * @param targets next state of each lettered transition, per nfa state
+	 * @param start_closure epsilon closure of the nfa start state
+	 * @param unanchored true: matches may start anywhere, false: only at the start
+	 * @return states set reached on each char class, null where there is no move
 	 */
-	private ArrayList<Integer> epsilonClosure(ArrayList<Integer> T, ArrayList<NFA.State> nfa_table) {
-		
-		Stack<Integer> stack = new Stack<Integer>();
-		for(int i = 0; i < T.size(); i++) {
-			stack.push(T.get(i));
-		}
-		while(!stack.empty()) {
-			int t = stack.pop();
-			ArrayList<NFA.State.Transition> t_transitions = nfa_table.get(t).getTransitions();
-			for(int i = 0; i < t_transitions.size(); i++) {
-				if(t_transitions.get(i).getLetter() == NFA.EPSILON) {
-					int u = t_transitions.get(i).getNext();
-					if(!T.contains(u)) {
-						T.add(u);
-						stack.push(u);
+	private BitSet[] moves(BitSet states_set, BitSet[] closures, int[][] symbols, int[][] targets, BitSet start_closure, boolean unanchored) {
+		if(unanchored) {
+			//a new match can start before every char
+			states_set = (BitSet)states_set.clone();
+			states_set.or(start_closure);
+		}
+		BitSet[] moves = new BitSet[this.classes];
+		for(int i = states_set.nextSetBit(0); i >= 0; i = states_set.nextSetBit(i+1)) {
+			for(int j = 0; j < symbols[i].length; j++) {
+				int symbol = symbols[i][j];
+				BitSet move = moves[symbol];
+				if(move == null) {
+					move = new BitSet();
+					moves[symbol] = move;
+				}
+				//add the target and all states equivalent to it
+				move.or(closures[targets[i][j]]);
+			}
+		}
+		if(unanchored) {
+			for(int symbol = 0; symbol < this.classes; symbol++) {
+				if(moves[symbol] == null) {
+					//no match in progress, back to the start
+					moves[symbol] = new BitSet();
+				}
+			}
+		}
+		return moves;
+	}
+	
+	/**
+	 * run subset construction on one thread, states are numbered in the order they are found
+	 * @param closures epsilon closure of every nfa state
+	 * @param symbols char class of each lettered transition, per nfa state
+	 * @param targets next state of each lettered transition, per nfa state
+	 * @param start_closure epsilon closure of the nfa start state
+	 * @param unanchored true: matches may start anywhere, false: only at the start
+	 * @param budget max number of states to make (0: no limit)
+	 * @return dfa states with their transitions
+	 * @throws DFA_Budget_Exception thrown if the dfa needs more states than the budget
+	 */
+	private ArrayList<State> subset(BitSet[] closures, int[][] symbols, int[][] targets, BitSet start_closure, boolean unanchored, int budget) {
+		ArrayList<State> DTrans = new ArrayList<State>();
+		//nfa states set -> index of the dfa state made from it
+		HashMap<BitSet, Integer> dfa_index = new HashMap<BitSet, Integer>();
+		//dfa states that don't have their transitions yet
+		ArrayDeque<Integer> unmarked = new ArrayDeque<Integer>();
+		//make new DFA start state
+		State start = new State();
+		//start = nfa start + all equivalent states
+		//(unanchored: no match in progress, the start closure is added on every step instead)
+		start.setStatesSet(unanchored ? new BitSet() : (BitSet)start_closure.clone());
+		DTrans.add(start);
+		dfa_index.put(start.getStatesSet(), 0);
+		unmarked.add(0);
+		
+		while(!unmarked.isEmpty()) {
+			int index = unmarked.poll();
+			//get next state in DFA transition list
+			State T = DTrans.get(index);
+			BitSet[] moves = this.moves(T.getStatesSet(), closures, symbols, targets, start_closure, unanchored);
+			for(int symbol = 0; symbol < this.classes; symbol++) {
+				BitSet next_dfa_state = moves[symbol];
+				if(next_dfa_state == null) {
+					continue;
+				}
+				Integer next = dfa_index.get(next_dfa_state);
+				//new states set, make a new dfa state for it
+				if(next == null) {
+					if(budget > 0 && DTrans.size() >= budget) {
+						throw new DFA_Budget_Exception(budget);
 					}
+					State U = new State();
+					U.setStatesSet(next_dfa_state);
+					DTrans.add(U);
+					next = DTrans.size()-1;
+					dfa_index.put(next_dfa_state, next);
+					unmarked.add(next);
 				}
+				T.setNext(symbol, next);
 			}
 		}
-		return T;
+		return DTrans;
 	}
 	
 	/**
@@ -247,18 +789,25 @@ public class DFA {
 	 */
 	public String toString() {
 		String result = "\n";
-		for(int i = 0; i < this.states.size(); i++) {
+		for(int i = 0; i < this.size(); i++) {
 			result += i + ": ";
-			State s = this.states.get(i);
-			ArrayList<Integer> s_set = s.getStatesSet();
-			result += "States: ";
-			for(int j = 0; j < s_set.size(); j++) {
-				result += s_set.get(j) + ", ";
+			//nfa states sets are only known when built from an nfa
+			if(i < this.states.size()) {
+				BitSet s_set = this.states.get(i).getStatesSet();
+				result += "States: ";
+				for(int j = s_set.nextSetBit(0); j >= 0; j = s_set.nextSetBit(j+1)) {
+					result += j + ", ";
+				}
+			}
+			if(this.finals[i]) {
+				result += "FINAL";
 			}
-			ArrayList<State.Transition> s_trans = s.getTransitions();
 			result += "\nTrans: ";
-			for(int j = 0; j < s_trans.size(); j++) {
-				result += s_trans.get(j).getLetter() + "->" + s_trans.get(j).getNext() + "; ";
+			for(int j = 0; j < this.classes; j++) {
+				int next = this.table[i * this.classes + j];
+				if(next != DEAD) {
+					result += this.alphabet.toString(j) + "->" + next + "; ";
+				}
 			}
 			result += "\n";
 		}
@@ -266,21 +815,24 @@ public class DFA {
 	}
 	
 	/**
-	 * dfa state with a single transition for every element in the dfa alphabet
+	 * dfa state with a single transition for every char class in the dfa alphabet
 	 */
 	public class State {
 		
-		private ArrayList<Integer> states_set;
-		private ArrayList<Transition> transitions;
+		private BitSet states_set;
+		private int[] row;
 		private boolean end;
+		private int accept;
 		
 		/**
-		 * initialize state with empty transition list and states set
+		 * initialize state with no transitions and an empty states set
 		 */
 		public State() {
-			this.states_set = new ArrayList<Integer>();
-			this.transitions = new ArrayList<State.Transition>();
+			this.states_set = new BitSet();
+			this.row = new int[DFA.this.classes];
+			Arrays.fill(this.row, DEAD);
 			this.end = false;
+			this.accept = -1;
 		}
 		
 		/**
@@ -295,16 +847,33 @@ public class DFA {
 		 * accessor for this dfa state's nfa state set
 		 * @return the nfa state set corresponding to this dfa state
 		 */
-		public ArrayList<Integer> getStatesSet() {
+		public BitSet getStatesSet() {
 			return this.states_set;
 		}
 		
 		/**
-		 * accessor for this dfa's transition list
-		 * @return this dfa's transition list
+		 * accessor for the state this state goes to on the given char class
+		 * @param symbol char class to transition on
+		 * @return index of the next state, DEAD if there is no transition
+		 */
+		public int getNext(int symbol) {
+			return this.row[symbol];
+		}
+		
+		/**
+		 * accessor for the pattern id this state accepts
+		 * @return pattern id, -1 if this state isn't final
+		 */
+		public int getAccept() {
+			return this.accept;
+		}
+		
+		/**
+		 * mutator for the pattern id this state accepts
+		 * @param accept new pattern id, -1 if this state isn't final
 		 */
-		public ArrayList<State.Transition> getTransitions() {
-			return this.transitions;
+		public void setAccept(int accept) {
+			this.accept = accept;
 		}
 		
 		/**
@@ -319,90 +888,256 @@ public class DFA {
 		 * mutator for this dfa state's state set
 		 * @param states_set new states set for this dfa state
 		 */
-		public void setStatesSet(ArrayList<Integer> states_set) {
+		public void setStatesSet(BitSet states_set) {
 			this.states_set = states_set;
 		}
 		
 		/**
-		 * add transition to this state
-		 * @param letter the letter to transition on
-		 * @param next node to transition to
+		 * set the transition on the given char class
+		 * @param symbol char class to transition on
+		 * @param next index of the state to transition to
 		 */
-		public void addTransition(char letter, int next) {
-			this.transitions.add(new Transition(letter, next));
+		public void setNext(int symbol, int next) {
+			this.row[symbol] = next;
 		}
+	}
+	
+	/**
+	 * subset construction spread over a fork-join pool: every unmarked dfa state
+	 * is a task, and the task that first maps a states set to an id forks the task
+	 * for it. Ids depend on thread timing, so at the end the states are renumbered
+	 * breadth first from the start, giving the same numbering as subset()
+	 */
+	private class Parallel_Subset {
+		
+		private BitSet[] closures;
+		private int[][] symbols;
+		private int[][] targets;
+		private BitSet start_closure;
+		private boolean unanchored;
+		private int budget;
+		//nfa states set -> id of the dfa state made from it
+		private ConcurrentHashMap<BitSet, Integer> ids;
+		//states set and transition row of every id
+		private ConcurrentHashMap<Integer, BitSet> sets;
+		private ConcurrentHashMap<Integer, int[]> rows;
+		//next free id
+		private AtomicInteger count;
 		
 		/**
-		 * set transition list from an outside source
-		 * @param transitions list of transitions to set as the transition list
+		 * setup construction over a flattened nfa
+		 * @param closures epsilon closure of every nfa state
+		 * @param symbols char class of each lettered transition, per nfa state
+		 * @param targets next state of each lettered transition, per nfa state
+		 * @param start_closure epsilon closure of the nfa start state
+		 * @param unanchored true: matches may start anywhere, false: only at the start
+		 * @param budget max number of states to make (0: no limit)
 		 */
-		public void setTransitions(ArrayList<State.Transition> transitions) {
-			this.transitions = transitions;
+		public Parallel_Subset(BitSet[] closures, int[][] symbols, int[][] targets, BitSet start_closure, boolean unanchored, int budget) {
+			this.closures = closures;
+			this.symbols = symbols;
+			this.targets = targets;
+			this.start_closure = start_closure;
+			this.unanchored = unanchored;
+			this.budget = budget;
+			this.ids = new ConcurrentHashMap<BitSet, Integer>();
+			this.sets = new ConcurrentHashMap<Integer, BitSet>();
+			this.rows = new ConcurrentHashMap<Integer, int[]>();
+			this.count = new AtomicInteger();
 		}
 		
 		/**
-		 * check if a transition exists for the given letter
-		 * @param letter value to check for a transition on
-		 * @return true: a transition exists, false: does not
+		 * build every state reachable from the start, then renumber them
+		 * @return dfa states with their transitions
+		 * @throws DFA_Budget_Exception thrown if the dfa needs more states than the budget
 		 */
-		public boolean hasTransition(char letter) {
-			for(int i = 0; i < this.transitions.size(); i++) {
-				if(transitions.get(i).getLetter() == letter) {
-					return true;
+		public ArrayList<State> run() {
+			BitSet start = this.unanchored ? new BitSet() : (BitSet)this.start_closure.clone();
+			this.ids.put(start, 0);
+			this.sets.put(0, start);
+			this.count.set(1);
+			ForkJoinPool pool = new ForkJoinPool(Options.DFA_THREADS);
+			try {
+				pool.invoke(new Expand_Task(null, 0));
+			}
+			finally {
+				pool.shutdownNow();
+			}
+			
+			//breadth first from the start, in class order, like subset() finds them
+			int size = this.count.get();
+			int[] renumber = new int[size];
+			Arrays.fill(renumber, DEAD);
+			int[] queue = new int[size];
+			int tail = 0;
+			renumber[0] = 0;
+			queue[tail++] = 0;
+			ArrayList<State> DTrans = new ArrayList<State>(size);
+			for(int head = 0; head < tail; head++) {
+				int id = queue[head];
+				int[] row = this.rows.get(id);
+				State T = new State();
+				T.setStatesSet(this.sets.get(id));
+				for(int symbol = 0; symbol < classes; symbol++) {
+					int next = row[symbol];
+					if(next == DEAD) {
+						continue;
+					}
+					if(renumber[next] == DEAD) {
+						renumber[next] = tail;
+						queue[tail++] = next;
+					}
+					T.setNext(symbol, renumber[next]);
 				}
+				DTrans.add(T);
+			}
+			
+			if(Options.DEBUG) {
+				System.out.println("   [DFA] parallel subset construction made " + size + " states on " + Options.DFA_THREADS + " threads");
 			}
-			return false;
+			return DTrans;
 		}
 		
 		/**
-		 * DFA transition
+		 * task that finds the transitions of one dfa state and forks a task for
+		 * every state it is first to find, it completes once all of those have
 		 */
-		public class Transition {
+		private class Expand_Task extends CountedCompleter<Void> {
 			
-			private char letter;
-			private int next_index;
-			
-			/**
-			 * setup transition with given letter and index to next state
-			 * @param letter value to transition on
-			 * @param next_index index of state to transition to
-			 */
-			public Transition(char letter, int next_index) {
-				this.letter = letter;
-				this.next_index = next_index;
-			}
+			private static final long serialVersionUID = 1L;
+			private int id;
 			
 			/**
-			 * accessor for value this transition applies to
-			 * @return value to transition on
+			 * setup task for a dfa state
+			 * @param parent task that found the state (null for the start)
+			 * @param id id of the state
 			 */
-			public char getLetter() {
-				return this.letter;
+			public Expand_Task(Expand_Task parent, int id) {
+				super(parent);
+				this.id = id;
 			}
 			
 			/**
-			 * accessor for state this transition goes to
-			 * @return index to transition to
+			 * make the transition row of the state
 			 */
-			public int getNext() {
-				return this.next_index;
-			}
-			
-			/**
-			 * mutator for letter this transition applies to
-			 * @param letter value to transition on
-			 */
-			public void setLetter(char letter) {
-				this.letter = letter;
+			@Override
+			public void compute() {
+				BitSet[] moves = DFA.this.moves(sets.get(this.id), closures, symbols, targets, start_closure, unanchored);
+				int[] row = new int[classes];
+				Arrays.fill(row, DEAD);
+				for(int symbol = 0; symbol < classes; symbol++) {
+					if(moves[symbol] == null) {
+						continue;
+					}
+					//new states set, only the thread that maps it makes the state
+					boolean[] found = new boolean[1];
+					row[symbol] = ids.computeIfAbsent(moves[symbol], set -> {
+						int next = count.getAndIncrement();
+						if(budget > 0 && next >= budget) {
+							throw new DFA_Budget_Exception(budget);
+						}
+						sets.put(next, set);
+						found[0] = true;
+						return next;
+					});
+					if(found[0]) {
+						this.addToPendingCount(1);
+						new Expand_Task(this, row[symbol]).fork();
+					}
+				}
+				rows.put(this.id, row);
+				this.tryComplete();
 			}
-			
-			/**
-			 * mutator for state this transition goes to
-			 * @param next_index index of state to transition to
-			 */
-			public void setNext(int next_index) {
-				this.next_index = next_index;
+		}
+	}
+	
+	/**
+	 * scan position in a dfa, one per concurrent scan
+	 */
+	public class Cursor implements Regex_Matcher {
+		
+		//the dfa's tables, copied for the hot loop
+		private final int[] table = DFA.this.table;
+		private final boolean[] finals = DFA.this.finals;
+		private final boolean[] exhausted = DFA.this.exhausted;
+		private final char[][] class_map = DFA.this.class_map;
+		private final int classes = DFA.this.classes;
+		private int current;
+		
+		/**
+		 * setup cursor at the start state
+		 */
+		public Cursor() {
+			this.current = 0;
+		}
+		
+		/**
+		 * goto the next state via the given letter
+		 * @param letter value to transition on
+		 */
+		@Override
+		public void gotoNext(char letter) {
+			//if already at invalid state
+			if(this.current != DEAD) {
+				int symbol = this.class_map[letter >>> 8][letter & 0xFF];
+				this.current = this.table[this.current * this.classes + symbol];
 			}
 		}
+		
+		/**
+		 * run the whole longest-match loop from the start state over text[from, to)
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return offset just past the longest non-empty match, -1 if nothing matched
+		 */
+		@Override
+		public int longestMatchEnd(CharSequence text, int from, int to) {
+			this.current = 0;
+			return DFA.this.longestMatchEnd(text, from, to);
+		}
+		
+		/**
+		 * accessor for current index being parsed
+		 * @return current index being parsed
+		 */
+		public int getCurrent() {
+			return this.current;
+		}
+		
+		/**
+		 * check if current state is a final state
+		 * @return true: this dfa is in an accept state, fase: it is not
+		 */
+		@Override
+		public boolean atFinal() {
+			return this.current != DEAD && this.finals[this.current];
+		}
+		
+		/**
+		 * check if the dfa is dead
+		 * @return true: this dfa is in a dead state, false: it is not
+		 */
+		@Override
+		public boolean atDead() {
+			return this.current == DEAD;
+		}
+		
+		/**
+		 * check if stepping further could still reach an accept state
+		 * @return true: a longer match is possible, false: it is not
+		 */
+		@Override
+		public boolean canContinue() {
+			return this.current != DEAD && !this.exhausted[this.current];
+		}
+		
+		/**
+		 * resets this cursor's current index to the start
+		 */
+		@Override
+		public void reset() {
+			this.current = 0;
+		}
 	}
 }
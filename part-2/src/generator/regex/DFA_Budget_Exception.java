@@ -0,0 +1,30 @@
+package generator.regex;
+
+/**
+ * DFA_Budget_Exception.java
+ * Thrown when subset construction makes more dfa states than its budget
+ * allows, so the caller can fall back to an engine that doesn't build the full dfa.
+ */
+public class DFA_Budget_Exception extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private int budget;
+	
+	/**
+	 * setup exception for the given budget
+	 * @param budget max number of dfa states that was exceeded
+	 */
+	public DFA_Budget_Exception(int budget) {
+		super("Regex ERROR: dfa exceeds the budget of " + budget + " states");
+		this.budget = budget;
+	}
+	
+	/**
+	 * accessor for the budget that was exceeded
+	 * @return max number of dfa states
+	 */
+	public int getBudget() {
+		return this.budget;
+	}
+}
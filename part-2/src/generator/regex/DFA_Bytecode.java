@@ -0,0 +1,861 @@
+package generator.regex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import global.Options;
+
+/**
+ * DFA_Bytecode.java
+ * Compiles a dfa into its own jvm class and loads it as a hidden class.
+ * Every state becomes a block of code with the state's char ranges checked
+ * inline and a direct jump to the next state's block, so the jit can treat
+ * each pattern like a hand written scanner.
+ */
+public class DFA_Bytecode implements Regex_Pattern {
+	
+	//largest method body the generator emits (the jvm limit is 65535 bytes)
+	private static final int MAX_CODE = 65000;
+	private static final String CLASS_NAME = "generator/regex/DFA_Bytecode$Generated";
+	private static final String PROGRAM_NAME = "generator/regex/DFA_Bytecode$Program";
+	
+	//opcodes used by the generator
+	private static final int ICONST_0 = 0x03;
+	private static final int ICONST_M1 = 0x02;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ISTORE = 0x36;
+	private static final int IINC = 0x84;
+	private static final int IF_ICMPEQ = 0x9f;
+	private static final int IF_ICMPNE = 0xa0;
+	private static final int IF_ICMPLT = 0xa1;
+	private static final int IF_ICMPGE = 0xa2;
+	private static final int IF_ICMPGT = 0xa3;
+	private static final int IF_ICMPLE = 0xa4;
+	private static final int GOTO = 0xa7;
+	private static final int GOTO_W = 0xc8;
+	private static final int TABLESWITCH = 0xaa;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKEINTERFACE = 0xb9;
+	
+	/**
+	 * entry points of a generated class
+	 */
+	interface Program {
+		
+		/**
+		 * transition from a state on a letter
+		 * @param state state to transition from
+		 * @param letter value to transition on
+		 * @return next state, DFA.DEAD if there is no transition
+		 */
+		int step(int state, int letter);
+		
+		/**
+		 * run the dfa from its start state over text[from, to)
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return offset just past the longest match, -1 if nothing matched
+		 */
+		int longestMatchEnd(CharSequence text, int from, int to);
+	}
+	
+	private DFA dfa;
+	private Program program;
+	
+	/**
+	 * setup pattern around an already loaded program
+	 * @param dfa dfa the program was generated from
+	 * @param program loaded instance of the generated class
+	 */
+	private DFA_Bytecode(DFA dfa, Program program) {
+		this.dfa = dfa;
+		this.program = program;
+	}
+	
+	/**
+	 * generate and load a class for the given dfa
+	 * @param dfa dfa to compile
+	 * @return the compiled pattern, null if the dfa is too large for one method or the class fails to load
+	 */
+	public static DFA_Bytecode compile(DFA dfa) {
+		long time = System.nanoTime();
+		ArrayList<ArrayList<int[]>> ranges = ranges(dfa);
+		byte[] bytes = new Class_Writer(dfa, ranges).toBytes();
+		if(bytes == null) {
+			if(Options.DEBUG) {
+				System.out.println("   [DFA_Bytecode] " + dfa.size() + " states don't fit in one method...");
+			}
+			return null;
+		}
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			Program program = (Program)lookup.findConstructor(lookup.lookupClass(),
+					MethodType.methodType(void.class)).invoke();
+			dfa.getStats().setCodegenTime(System.nanoTime() - time);
+			return new DFA_Bytecode(dfa, program);
+		}
+		catch(Throwable t) {
+			//the table dfa still works, so a class the jvm rejects isn't fatal
+			if(Options.DEBUG) {
+				System.out.println("   [DFA_Bytecode] generated class failed to load: " + t);
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * accessor for the dfa this pattern was generated from
+	 * @return the source dfa
+	 */
+	public DFA getDFA() {
+		return this.dfa;
+	}
+	
+	/**
+	 * accessor for the sizes and compile times (those of the source dfa)
+	 * @return stats of this pattern
+	 */
+	@Override
+	public Regex_Stats getStats() {
+		return this.dfa.getStats();
+	}
+	
+	/**
+	 * run the generated scanner from the start state over text[from, to)
+	 * @param text text to scan
+	 * @param from offset to start the match at
+	 * @param to offset to stop scanning at
+	 * @return offset just past the longest match, -1 if nothing matched
+	 */
+	public int longestMatchEnd(CharSequence text, int from, int to) {
+		return this.program.longestMatchEnd(text, from, to);
+	}
+	
+	/**
+	 * make a new cursor that steps through the generated class
+	 * @return new cursor over this pattern
+	 */
+	@Override
+	public Cursor matcher() {
+		return new Cursor();
+	}
+	
+	/**
+	 * collect the char ranges leaving every state
+	 * @param dfa dfa to collect ranges of
+	 * @return for each state, sorted {lo, hi, next} ranges
+	 */
+	private static ArrayList<ArrayList<int[]>> ranges(DFA dfa) {
+		Alphabet alphabet = dfa.getAlphabet();
+		int[] table = dfa.getTable();
+		int classes = alphabet.size();
+		//every class range once, sorted by lo
+		TreeMap<Integer, int[]> spans = new TreeMap<Integer, int[]>();
+		for(int i = 1; i < classes; i++) {
+			String pairs = alphabet.getRanges(i);
+			for(int j = 0; j < pairs.length(); j += 2) {
+				spans.put((int)pairs.charAt(j), new int[] {pairs.charAt(j), pairs.charAt(j+1), i});
+			}
+		}
+		ArrayList<ArrayList<int[]>> result = new ArrayList<ArrayList<int[]>>(dfa.size());
+		for(int s = 0; s < dfa.size(); s++) {
+			ArrayList<int[]> state = new ArrayList<int[]>();
+			result.add(state);
+			int[] last = null;
+			for(int[] span : spans.values()) {
+				int next = table[s * classes + span[2]];
+				if(next == DFA.DEAD) {
+					last = null;
+				}
+				else if(last != null && last[1] == span[0] - 1 && last[2] == next) {
+					last[1] = span[1];
+				}
+				else {
+					last = new int[] {span[0], span[1], next};
+					state.add(last);
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * scan position in a generated dfa
+	 */
+	public class Cursor implements Regex_Matcher {
+		
+		private final Program program = DFA_Bytecode.this.program;
+		private final boolean[] finals = DFA_Bytecode.this.dfa.getFinals();
+		private final boolean[] exhausted = DFA_Bytecode.this.dfa.getExhausted();
+		private int current;
+		
+		/**
+		 * setup cursor at the start state
+		 */
+		public Cursor() {
+			this.current = 0;
+		}
+		
+		/**
+		 * goto the next state via the given letter
+		 * @param letter value to transition on
+		 */
+		@Override
+		public void gotoNext(char letter) {
+			if(this.current != DFA.DEAD) {
+				this.current = this.program.step(this.current, letter);
+			}
+		}
+		
+		/**
+		 * run the generated longest-match loop over text[from, to)
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return offset just past the longest non-empty match, -1 if nothing matched
+		 */
+		@Override
+		public int longestMatchEnd(CharSequence text, int from, int to) {
+			this.current = 0;
+			return this.program.longestMatchEnd(text, from, to);
+		}
+		
+		/**
+		 * check if current state is a final state
+		 * @return true: in an accept state, false: not
+		 */
+		@Override
+		public boolean atFinal() {
+			return this.current != DFA.DEAD && this.finals[this.current];
+		}
+		
+		/**
+		 * check if the cursor is dead
+		 * @return true: in a dead state, false: not
+		 */
+		@Override
+		public boolean atDead() {
+			return this.current == DFA.DEAD;
+		}
+		
+		/**
+		 * check if stepping further could still reach an accept state
+		 * @return true: a longer match is possible, false: it is not
+		 */
+		@Override
+		public boolean canContinue() {
+			return this.current != DFA.DEAD && !this.exhausted[this.current];
+		}
+		
+		/**
+		 * resets this cursor to the start state
+		 */
+		@Override
+		public void reset() {
+			this.current = 0;
+		}
+	}
+	
+	/**
+	 * writes the class file for one dfa
+	 * (java 8 format, every branch target has the same locals and an empty stack)
+	 */
+	private static class Class_Writer {
+		
+		private DFA dfa;
+		private ArrayList<ArrayList<int[]>> ranges;
+		//constant pool entries (index 0 unused)
+		private ArrayList<byte[]> pool;
+		private HashMap<String, Integer> pool_index;
+		
+		/**
+		 * setup writer for the given dfa
+		 * @param dfa dfa to write a class for
+		 * @param ranges char ranges leaving every state
+		 */
+		public Class_Writer(DFA dfa, ArrayList<ArrayList<int[]>> ranges) {
+			this.dfa = dfa;
+			this.ranges = ranges;
+			this.pool = new ArrayList<byte[]>();
+			this.pool.add(null);
+			this.pool_index = new HashMap<String, Integer>();
+		}
+		
+		/**
+		 * generate the class
+		 * @return bytes of the class file, null if a method grows too large
+		 */
+		public byte[] toBytes() {
+			int this_class = this.classRef(CLASS_NAME);
+			int super_class = this.classRef("java/lang/Object");
+			int program = this.classRef(PROGRAM_NAME);
+			Code init = this.init();
+			Code step = this.step(false);
+			Code match = this.longestMatchEnd(false);
+			//past 32767 bytes a 16 bit offset may not reach, so generate again with 32 bit jumps
+			if(step != null && step.size() > Short.MAX_VALUE) {
+				step = this.step(true);
+			}
+			if(match != null && match.size() > Short.MAX_VALUE) {
+				match = this.longestMatchEnd(true);
+			}
+			if(step == null || match == null) {
+				return null;
+			}
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				//method names and the attribute names have to be in the pool first
+				int init_name = this.utf8("<init>");
+				int init_type = this.utf8("()V");
+				int step_name = this.utf8("step");
+				int step_type = this.utf8("(II)I");
+				int match_name = this.utf8("longestMatchEnd");
+				int match_type = this.utf8("(Ljava/lang/CharSequence;II)I");
+				int code_name = this.utf8("Code");
+				int frames_name = this.utf8("StackMapTable");
+				
+				out.writeInt(0xCAFEBABE);
+				out.writeShort(0);
+				out.writeShort(52);
+				out.writeShort(this.pool.size());
+				for(int i = 1; i < this.pool.size(); i++) {
+					out.write(this.pool.get(i));
+				}
+				//public final super
+				out.writeShort(0x0031);
+				out.writeShort(this_class);
+				out.writeShort(super_class);
+				out.writeShort(1);
+				out.writeShort(program);
+				//no fields
+				out.writeShort(0);
+				out.writeShort(3);
+				init.writeMethod(out, init_name, init_type, code_name, frames_name);
+				step.writeMethod(out, step_name, step_type, code_name, frames_name);
+				match.writeMethod(out, match_name, match_type, code_name, frames_name);
+				//no class attributes
+				out.writeShort(0);
+				return bytes.toByteArray();
+			}
+			catch(IOException ioe) {
+				throw new IllegalStateException(ioe);
+			}
+		}
+		
+		/**
+		 * public no argument constructor
+		 * @return code of the constructor
+		 */
+		private Code init() {
+			int object_init = this.methodRef(0x0a, "java/lang/Object", "<init>", "()V");
+			Code code = new Code(1, 1, 0, false);
+			code.op(ALOAD_0);
+			code.op(INVOKESPECIAL);
+			code.u2(object_init);
+			code.op(RETURN);
+			return code;
+		}
+		
+		/**
+		 * int step(int state, int letter): switch on state, then the state's ranges
+		 * @param wide whether jumps use 32 bit offsets
+		 * @return code of the method, null if it is too large
+		 */
+		private Code step(boolean wide) {
+			int n = this.dfa.size();
+			//locals: this, state, letter
+			Code code = new Code(2, 3, 0, wide);
+			int dead = code.newLabel();
+			int[] blocks = new int[n];
+			for(int s = 0; s < n; s++) {
+				blocks[s] = code.newLabel();
+			}
+			code.op(ILOAD);
+			code.u1(1);
+			code.tableSwitch(dead, blocks);
+			for(int s = 0; s < n && code.size() < MAX_CODE; s++) {
+				code.mark(blocks[s]);
+				for(int[] range : this.ranges.get(s)) {
+					int next = code.newLabel();
+					this.rangeCheck(code, 2, range, next);
+					this.push(code, range[2]);
+					code.op(IRETURN);
+					code.mark(next);
+				}
+				code.jump(GOTO, dead);
+			}
+			code.mark(dead);
+			code.op(ICONST_M1);
+			code.op(IRETURN);
+			return code.size() < MAX_CODE ? code : null;
+		}
+		
+		/**
+		 * int longestMatchEnd(CharSequence text, int from, int to): a block per state,
+		 * each block reads a char and jumps straight to the next state's block
+		 * @param wide whether jumps use 32 bit offsets
+		 * @return code of the method, null if it is too large
+		 */
+		private Code longestMatchEnd(boolean wide) {
+			int n = this.dfa.size();
+			boolean[] finals = this.dfa.getFinals();
+			int char_at = this.methodRef(0x0b, "java/lang/CharSequence", "charAt", "(I)C");
+			//locals: this, text, from, to, best, i, c
+			Code code = new Code(2, 7, 3, wide);
+			int end = code.newLabel();
+			int[] marks = new int[n];
+			int[] entries = new int[n];
+			for(int s = 0; s < n; s++) {
+				marks[s] = code.newLabel();
+				entries[s] = code.newLabel();
+			}
+			//best = -1, i = from, c = 0
+			code.op(ICONST_M1);
+			code.op(ISTORE);
+			code.u1(4);
+			code.op(ILOAD);
+			code.u1(2);
+			code.op(ISTORE);
+			code.u1(5);
+			code.op(ICONST_0);
+			code.op(ISTORE);
+			code.u1(6);
+			//the start's mark is only reached by a transition back into it
+			boolean reentered = false;
+			for(int s = 0; s < n; s++) {
+				for(int[] range : this.ranges.get(s)) {
+					reentered |= range[2] == 0;
+				}
+			}
+			//start state, an empty match doesn't count so skip its mark
+			code.jump(GOTO, entries[0]);
+			for(int s = 0; s < n && code.size() < MAX_CODE; s++) {
+				code.mark(marks[s]);
+				//unreachable code would need a stack map frame of its own
+				if(finals[s] && (s != 0 || reentered)) {
+					//best = i
+					code.op(ILOAD);
+					code.u1(5);
+					code.op(ISTORE);
+					code.u1(4);
+				}
+				code.mark(entries[s]);
+				//no transitions out, nothing longer can match
+				if(this.ranges.get(s).isEmpty()) {
+					code.jump(GOTO, end);
+					continue;
+				}
+				//if(i >= to) stop
+				code.op(ILOAD);
+				code.u1(5);
+				code.op(ILOAD);
+				code.u1(3);
+				code.jump(IF_ICMPGE, end);
+				//c = text.charAt(i++)
+				code.op(ALOAD_1);
+				code.op(ILOAD);
+				code.u1(5);
+				code.op(INVOKEINTERFACE);
+				code.u2(char_at);
+				code.u1(2);
+				code.u1(0);
+				code.op(ISTORE);
+				code.u1(6);
+				code.op(IINC);
+				code.u1(5);
+				code.u1(1);
+				for(int[] range : this.ranges.get(s)) {
+					int next = code.newLabel();
+					this.rangeCheck(code, 6, range, next);
+					code.jump(GOTO, marks[range[2]]);
+					code.mark(next);
+				}
+				//no transition, dead
+				code.jump(GOTO, end);
+			}
+			code.mark(end);
+			code.op(ILOAD);
+			code.u1(4);
+			code.op(IRETURN);
+			return code.size() < MAX_CODE ? code : null;
+		}
+		
+		/**
+		 * emit a check that jumps to miss unless local is in [lo, hi]
+		 * @param code code to emit into
+		 * @param local index of the int local holding the char
+		 * @param range {lo, hi, next} range to check
+		 * @param miss label to jump to when the char isn't in the range
+		 */
+		private void rangeCheck(Code code, int local, int[] range, int miss) {
+			code.op(ILOAD);
+			code.u1(local);
+			this.push(code, range[0]);
+			if(range[0] == range[1]) {
+				code.jump(IF_ICMPNE, miss);
+			}
+			else {
+				code.jump(IF_ICMPLT, miss);
+				code.op(ILOAD);
+				code.u1(local);
+				this.push(code, range[1]);
+				code.jump(IF_ICMPGT, miss);
+			}
+		}
+		
+		/**
+		 * emit the shortest instruction that pushes the given int
+		 * @param code code to emit into
+		 * @param value int to push
+		 */
+		private void push(Code code, int value) {
+			if(value >= -1 && value <= 5) {
+				code.op(ICONST_0 + value);
+			}
+			else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				code.op(BIPUSH);
+				code.u1(value);
+			}
+			else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				code.op(SIPUSH);
+				code.u2(value);
+			}
+			else {
+				code.op(LDC_W);
+				code.u2(this.integer(value));
+			}
+		}
+		
+		/**
+		 * add (or find) a constant pool entry
+		 * @param key unique description of the entry
+		 * @param entry bytes of the entry
+		 * @return pool index of the entry
+		 */
+		private int constant(String key, byte[] entry) {
+			Integer index = this.pool_index.get(key);
+			if(index == null) {
+				index = this.pool.size();
+				this.pool.add(entry);
+				this.pool_index.put(key, index);
+			}
+			return index;
+		}
+		
+		/**
+		 * CONSTANT_Utf8 entry (names here are plain ascii)
+		 * @param value string to add
+		 * @return pool index of the entry
+		 */
+		private int utf8(String value) {
+			byte[] entry = new byte[3 + value.length()];
+			entry[0] = 1;
+			entry[1] = (byte)(value.length() >> 8);
+			entry[2] = (byte)value.length();
+			for(int i = 0; i < value.length(); i++) {
+				entry[3 + i] = (byte)value.charAt(i);
+			}
+			return this.constant("U" + value, entry);
+		}
+		
+		/**
+		 * CONSTANT_Integer entry
+		 * @param value int to add
+		 * @return pool index of the entry
+		 */
+		private int integer(int value) {
+			return this.constant("I" + value, new byte[] {3,
+					(byte)(value >> 24), (byte)(value >> 16), (byte)(value >> 8), (byte)value});
+		}
+		
+		/**
+		 * CONSTANT_Class entry
+		 * @param name internal name of the class
+		 * @return pool index of the entry
+		 */
+		private int classRef(String name) {
+			int utf8 = this.utf8(name);
+			return this.constant("C" + name, new byte[] {7, (byte)(utf8 >> 8), (byte)utf8});
+		}
+		
+		/**
+		 * CONSTANT_Methodref (0x0a) or CONSTANT_InterfaceMethodref (0x0b) entry
+		 * @param tag kind of reference
+		 * @param owner internal name of the declaring class
+		 * @param name method name
+		 * @param type method descriptor
+		 * @return pool index of the entry
+		 */
+		private int methodRef(int tag, String owner, String name, String type) {
+			int owner_ref = this.classRef(owner);
+			int name_ref = this.utf8(name);
+			int type_ref = this.utf8(type);
+			int name_and_type = this.constant("N" + name + type, new byte[] {12,
+					(byte)(name_ref >> 8), (byte)name_ref, (byte)(type_ref >> 8), (byte)type_ref});
+			return this.constant("M" + owner + "." + name + type, new byte[] {(byte)tag,
+					(byte)(owner_ref >> 8), (byte)owner_ref, (byte)(name_and_type >> 8), (byte)name_and_type});
+		}
+	}
+	
+	/**
+	 * bytecode of one method with labels for forward and backward jumps
+	 */
+	private static class Code {
+		
+		private byte[] bytes;
+		private int size;
+		private int max_stack;
+		private int max_locals;
+		//int locals added after the arguments before the first jump
+		private int extra_locals;
+		//whether jumps are emitted with 32 bit offsets
+		private boolean wide;
+		//label -> code offset (-1 until marked)
+		private int[] labels;
+		private int label_count;
+		//pending jumps: {offset of the opcode, offset of the operand, label, operand width}
+		private ArrayList<int[]> fixups;
+		
+		/**
+		 * setup empty method body
+		 * @param max_stack deepest operand stack the code uses
+		 * @param max_locals number of local slots the code uses
+		 * @param extra_locals int locals declared after the arguments
+		 * @param wide whether jumps are emitted with 32 bit offsets
+		 */
+		public Code(int max_stack, int max_locals, int extra_locals, boolean wide) {
+			this.bytes = new byte[256];
+			this.size = 0;
+			this.max_stack = max_stack;
+			this.max_locals = max_locals;
+			this.extra_locals = extra_locals;
+			this.wide = wide;
+			this.labels = new int[16];
+			this.label_count = 0;
+			this.fixups = new ArrayList<int[]>();
+		}
+		
+		/**
+		 * accessor for the current code size
+		 * @return number of bytes emitted so far
+		 */
+		public int size() {
+			return this.size;
+		}
+		
+		/**
+		 * emit one byte
+		 * @param value byte to emit
+		 */
+		public void u1(int value) {
+			if(this.size == this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+			}
+			this.bytes[this.size++] = (byte)value;
+		}
+		
+		/**
+		 * emit a big endian short
+		 * @param value short to emit
+		 */
+		public void u2(int value) {
+			this.u1(value >> 8);
+			this.u1(value);
+		}
+		
+		/**
+		 * emit a big endian int
+		 * @param value int to emit
+		 */
+		public void u4(int value) {
+			this.u2(value >> 16);
+			this.u2(value);
+		}
+		
+		/**
+		 * emit an opcode
+		 * @param opcode opcode to emit
+		 */
+		public void op(int opcode) {
+			this.u1(opcode);
+		}
+		
+		/**
+		 * make a new unmarked label
+		 * @return the new label
+		 */
+		public int newLabel() {
+			if(this.label_count == this.labels.length) {
+				this.labels = Arrays.copyOf(this.labels, this.labels.length * 2);
+			}
+			this.labels[this.label_count] = -1;
+			return this.label_count++;
+		}
+		
+		/**
+		 * place a label at the current offset
+		 * @param label label to place
+		 */
+		public void mark(int label) {
+			this.labels[label] = this.size;
+		}
+		
+		/**
+		 * emit a jump instruction to a label
+		 * (wide code uses goto_w, a conditional jump branches over it on the inverted condition)
+		 * @param opcode jump opcode
+		 * @param label label to jump to
+		 */
+		public void jump(int opcode, int label) {
+			if(!this.wide) {
+				this.jump(opcode, label, 2);
+			}
+			else if(opcode == GOTO) {
+				this.jump(GOTO_W, label, 4);
+			}
+			else {
+				//if_icmp opcodes come in pairs (eq/ne, lt/ge, gt/le)
+				int skip = this.newLabel();
+				this.jump(((opcode + 1) ^ 1) - 1, skip, 2);
+				this.jump(GOTO_W, label, 4);
+				this.mark(skip);
+			}
+		}
+		
+		/**
+		 * emit a jump instruction with an offset of the given width
+		 * @param opcode jump opcode
+		 * @param label label to jump to
+		 * @param width bytes of the offset
+		 */
+		private void jump(int opcode, int label, int width) {
+			int at = this.size;
+			this.op(opcode);
+			this.fixups.add(new int[] {at, this.size, label, width});
+			if(width == 2) {
+				this.u2(0);
+			}
+			else {
+				this.u4(0);
+			}
+		}
+		
+		/**
+		 * emit a tableswitch over 0..targets.length-1
+		 * @param fallback label for values outside the table
+		 * @param targets label for each value
+		 */
+		public void tableSwitch(int fallback, int[] targets) {
+			int at = this.size;
+			this.op(TABLESWITCH);
+			//operands start 4 byte aligned
+			while(this.size % 4 != 0) {
+				this.u1(0);
+			}
+			this.fixups.add(new int[] {at, this.size, fallback, 4});
+			this.u4(0);
+			this.u4(0);
+			this.u4(targets.length - 1);
+			for(int i = 0; i < targets.length; i++) {
+				this.fixups.add(new int[] {at, this.size, targets[i], 4});
+				this.u4(0);
+			}
+		}
+		
+		/**
+		 * patch every jump and write the method_info structure
+		 * @param out stream to write to
+		 * @param name pool index of the method name
+		 * @param type pool index of the method descriptor
+		 * @param code_name pool index of "Code"
+		 * @param frames_name pool index of "StackMapTable"
+		 * @throws IOException thrown by the stream
+		 */
+		public void writeMethod(DataOutputStream out, int name, int type, int code_name, int frames_name) throws IOException {
+			TreeSet<Integer> targets = new TreeSet<Integer>();
+			for(int[] fixup : this.fixups) {
+				int target = this.labels[fixup[2]];
+				int offset = target - fixup[0];
+				if(fixup[3] == 2) {
+					if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+						throw new IllegalStateException("jump out of range");
+					}
+					this.bytes[fixup[1]] = (byte)(offset >> 8);
+					this.bytes[fixup[1] + 1] = (byte)offset;
+				}
+				else {
+					for(int i = 0; i < 4; i++) {
+						this.bytes[fixup[1] + i] = (byte)(offset >> (24 - 8 * i));
+					}
+				}
+				targets.add(target);
+			}
+			//one frame per jump target: the first adds the extra int locals, the rest are the same
+			ByteArrayOutputStream frame_bytes = new ByteArrayOutputStream();
+			DataOutputStream frames = new DataOutputStream(frame_bytes);
+			int last = -1;
+			for(int target : targets) {
+				int delta = target - last - 1;
+				if(last == -1 && this.extra_locals > 0) {
+					frames.writeByte(251 + this.extra_locals);
+					frames.writeShort(delta);
+					for(int i = 0; i < this.extra_locals; i++) {
+						//ITEM_Integer
+						frames.writeByte(1);
+					}
+				}
+				else if(delta < 64) {
+					frames.writeByte(delta);
+				}
+				else {
+					frames.writeByte(251);
+					frames.writeShort(delta);
+				}
+				last = target;
+			}
+			byte[] frame_table = frame_bytes.toByteArray();
+			
+			//public
+			out.writeShort(0x0001);
+			out.writeShort(name);
+			out.writeShort(type);
+			out.writeShort(1);
+			out.writeShort(code_name);
+			int frames_length = targets.isEmpty() ? 0 : 8 + frame_table.length;
+			out.writeInt(12 + this.size + frames_length);
+			out.writeShort(this.max_stack);
+			out.writeShort(this.max_locals);
+			out.writeInt(this.size);
+			out.write(this.bytes, 0, this.size);
+			//no exception table
+			out.writeShort(0);
+			if(targets.isEmpty()) {
+				out.writeShort(0);
+			}
+			else {
+				out.writeShort(1);
+				out.writeShort(frames_name);
+				out.writeInt(2 + frame_table.length);
+				out.writeShort(targets.size());
+				out.write(frame_table);
+			}
+		}
+	}
+}
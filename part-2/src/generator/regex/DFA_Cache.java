@@ -0,0 +1,414 @@
+package generator.regex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import global.Options;
+
+/**
+ * DFA_Cache.java
+ * On-disk cache of compiled dfas, keyed by regex text and engine version.
+ * Each dfa is one file in a compact binary format, so warm runs skip
+ * RecursiveDescent, NFA and DFA entirely. A file is memory mapped and its
+ * class map and table are copied onto the heap in bulk (the dfa isn't read
+ * in place, its table is a plain int array).
+ * The DFA_Profile a dfa was renumbered by is kept in a .profile file beside it,
+ * the unanchored dfas a Regex_Search scans with in .forward and .reverse files.
+ * 
+ * File layout (big endian):
+ *   header:  magic, version, states, classes, unminimized states, distinct pages
+ *   class map: page index for each of the 256 pages, then the distinct pages
+ *   classes: length + lo, hi pairs of every class except class 0
+ *   table:   states * classes ints
+ *   accept:  one bit per state, packed into longs
+ */
+public class DFA_Cache {
+	
+	//"MRDF"
+	private static final int MAGIC = 0x4D524446;
+	//bump whenever compiled dfas or this format change
+	public static final int VERSION = 5;
+	private static final int PAGES = 256;
+	private static final int PAGE_SIZE = 256;
+	
+	private File directory;
+	
+	/**
+	 * setup a cache in the given directory (created if it doesn't exist)
+	 * @param directory directory that holds the cached dfa files
+	 */
+	public DFA_Cache(String directory) {
+		this.directory = new File(directory);
+	}
+	
+	/**
+	 * load the cached dfa for a regex
+	 * @param regex regex text the dfa was compiled from
+	 * @return the cached dfa, null if it isn't cached (or the file is stale)
+	 */
+	public DFA load(String regex) {
+		return this.load(this.fileFor(regex, ".dfa"));
+	}
+	
+	/**
+	 * load the cached unanchored dfas a search for a regex scans with
+	 * @param regex regex text the dfas were compiled from
+	 * @return the forward and reverse dfa, null unless both are cached
+	 */
+	public DFA[] loadSearch(String regex) {
+		DFA forward = this.load(this.fileFor(regex, ".forward"));
+		if(forward == null) {
+			return null;
+		}
+		DFA reverse = this.load(this.fileFor(regex, ".reverse"));
+		if(reverse == null) {
+			return null;
+		}
+		return new DFA[] {forward, reverse};
+	}
+	
+	/**
+	 * load a dfa from a cache file
+	 * @param file file to read
+	 * @return the dfa, null if the file doesn't exist or is stale
+	 */
+	private DFA load(File file) {
+		if(!file.exists()) {
+			return null;
+		}
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = in.getChannel();
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				return read(buffer);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch(IOException ioe) {
+			if(Options.DEBUG) {
+				System.out.println("   [DFA_Cache] could not read " + file + ": " + ioe);
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * store a compiled dfa for a regex (replaces any older entry)
+	 * @param regex regex text the dfa was compiled from
+	 * @param dfa compiled dfa to store
+	 */
+	public void store(String regex, DFA dfa) {
+		this.store(this.fileFor(regex, ".dfa"), dfa);
+	}
+	
+	/**
+	 * store the unanchored dfas a search for a regex scans with
+	 * @param regex regex text the dfas were compiled from
+	 * @param forward unanchored dfa of the regex
+	 * @param reverse unanchored dfa of the reversed regex
+	 */
+	public void storeSearch(String regex, DFA forward, DFA reverse) {
+		this.store(this.fileFor(regex, ".forward"), forward);
+		this.store(this.fileFor(regex, ".reverse"), reverse);
+	}
+	
+	/**
+	 * write a dfa to a cache file
+	 * @param file file to replace
+	 * @param dfa dfa to write
+	 */
+	private void store(File file, DFA dfa) {
+		try {
+			if(!this.directory.isDirectory() && !this.directory.mkdirs()) {
+				throw new IOException("can't create cache directory " + this.directory);
+			}
+			//write to a temporary file then move it in place, readers never see half a file
+			File temp = File.createTempFile("dfa", ".tmp", this.directory);
+			RandomAccessFile out = new RandomAccessFile(temp, "rw");
+			try {
+				out.getChannel().write(write(dfa));
+			}
+			finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException ioe) {
+			if(Options.DEBUG) {
+				System.out.println("   [DFA_Cache] could not write " + file + ": " + ioe);
+			}
+		}
+	}
+	
+	/**
+	 * load the saved profile of a regex's dfa
+	 * @param regex regex text the dfa was compiled from
+	 * @param sample sample text the profile has to be recorded over
+	 * @return the profile, null if none was saved for this regex and sample
+	 */
+	public DFA_Profile loadProfile(String regex, String sample) {
+		File file = this.fileFor(regex, ".profile");
+		if(!file.exists()) {
+			return null;
+		}
+		try {
+			DFA_Profile profile = DFA_Profile.load(file);
+			//a profile recorded over another sample (or left from another regex) orders the states wrongly
+			if(profile == null || !profile.getKey().equals(profileKey(regex, sample))) {
+				return null;
+			}
+			return profile;
+		}
+		catch(IOException ioe) {
+			if(Options.DEBUG) {
+				System.out.println("   [DFA_Cache] could not read " + file + ": " + ioe);
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * save the profile of a regex's dfa next to its cache file
+	 * @param regex regex text the dfa was compiled from
+	 * @param sample sample text the profile was recorded over
+	 * @param profile profile of the dfa as subset construction numbered it
+	 */
+	public void storeProfile(String regex, String sample, DFA_Profile profile) {
+		File file = this.fileFor(regex, ".profile");
+		profile.setKey(profileKey(regex, sample));
+		try {
+			if(!this.directory.isDirectory() && !this.directory.mkdirs()) {
+				throw new IOException("can't create cache directory " + this.directory);
+			}
+			File temp = File.createTempFile("profile", ".tmp", this.directory);
+			profile.save(temp);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException ioe) {
+			if(Options.DEBUG) {
+				System.out.println("   [DFA_Cache] could not write " + file + ": " + ioe);
+			}
+		}
+	}
+	
+	/**
+	 * get the cache file for a regex
+	 * @param regex regex text to get the file of
+	 * @param extension file extension (.dfa, .profile, .forward or .reverse)
+	 * @return file named by a hash of the engine version, options and regex
+	 */
+	private File fileFor(String regex, String extension) {
+		return new File(this.directory, hash(key(regex)) + extension);
+	}
+	
+	/**
+	 * get the key a regex's files are cached under
+	 * @param regex regex text to get the key of
+	 * @return the engine version, options and regex
+	 */
+	private static String key(String regex) {
+		return VERSION + ":" + Options.MINIMIZE + ":" + Options.CASE_INSENSITIVE + ":" + regex;
+	}
+	
+	/**
+	 * get the key a profile is saved with, the profile only applies to the
+	 * dfa of the same regex recorded over the same sample
+	 * @param regex regex text the dfa was compiled from
+	 * @param sample sample text the profile was recorded over
+	 * @return hash of the regex's cache key and the sample
+	 */
+	private static String profileKey(String regex, String sample) {
+		return hash(key(regex) + "\n" + sample);
+	}
+	
+	/**
+	 * hash a key into a file name
+	 * @param key key to hash
+	 * @return hex sha-256 of the key
+	 */
+	private static String hash(String key) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder();
+			for(int i = 0; i < hash.length; i++) {
+				name.append(String.format("%02x", hash[i]));
+			}
+			return name.toString();
+		}
+		catch(NoSuchAlgorithmException nsae) {
+			throw new IllegalStateException(nsae);
+		}
+		catch(IOException ioe) {
+			throw new IllegalStateException(ioe);
+		}
+	}
+	
+	/**
+	 * serialize a dfa into the cache file format
+	 * @param dfa dfa to serialize
+	 * @return buffer holding the whole file
+	 */
+	private static ByteBuffer write(DFA dfa) {
+		Alphabet alphabet = dfa.getAlphabet();
+		char[][] pages = alphabet.getPages();
+		int[] table = dfa.getTable();
+		boolean[] finals = dfa.getFinals();
+		//shared pages are written once
+		IdentityHashMap<char[], Integer> page_ids = new IdentityHashMap<char[], Integer>();
+		ArrayList<char[]> distinct = new ArrayList<char[]>();
+		int[] page_index = new int[PAGES];
+		for(int i = 0; i < PAGES; i++) {
+			Integer id = page_ids.get(pages[i]);
+			if(id == null) {
+				id = distinct.size();
+				page_ids.put(pages[i], id);
+				distinct.add(pages[i]);
+			}
+			page_index[i] = id;
+		}
+		int size = 6 * 4 + PAGES * 4 + distinct.size() * PAGE_SIZE * 2;
+		for(int i = 1; i < alphabet.size(); i++) {
+			size += 4 + alphabet.getRanges(i).length() * 2;
+		}
+		size += table.length * 4 + ((finals.length + 63) / 64) * 8;
+		
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(finals.length);
+		buffer.putInt(alphabet.size());
+		buffer.putInt(dfa.getUnminimizedSize());
+		buffer.putInt(distinct.size());
+		for(int i = 0; i < PAGES; i++) {
+			buffer.putInt(page_index[i]);
+		}
+		for(int i = 0; i < distinct.size(); i++) {
+			buffer.asCharBuffer().put(distinct.get(i));
+			buffer.position(buffer.position() + PAGE_SIZE * 2);
+		}
+		for(int i = 1; i < alphabet.size(); i++) {
+			String pairs = alphabet.getRanges(i);
+			buffer.putInt(pairs.length());
+			for(int j = 0; j < pairs.length(); j++) {
+				buffer.putChar(pairs.charAt(j));
+			}
+		}
+		buffer.asIntBuffer().put(table);
+		buffer.position(buffer.position() + table.length * 4);
+		long[] accept = new long[(finals.length + 63) / 64];
+		for(int i = 0; i < finals.length; i++) {
+			if(finals[i]) {
+				accept[i / 64] |= 1L << (i % 64);
+			}
+		}
+		buffer.asLongBuffer().put(accept);
+		buffer.position(buffer.position() + accept.length * 8);
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * deserialize a dfa from the cache file format
+	 * @param buffer buffer holding the whole file
+	 * @return the dfa, null if the file is from another version or malformed
+	 */
+	private static DFA read(ByteBuffer buffer) {
+		try {
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return null;
+			}
+			int states = buffer.getInt();
+			int classes = buffer.getInt();
+			int unminimized_size = buffer.getInt();
+			int distinct = buffer.getInt();
+			if(states < 1 || classes < 1 || distinct < 1) {
+				return null;
+			}
+			//a corrupt count must not allocate more than the file holds
+			long table_size = (long)states * classes;
+			if(!fits(buffer, PAGES * 4L + (long)distinct * PAGE_SIZE * 2 + (classes - 1) * 4L + table_size * 4 + (states + 63) / 64 * 8L)) {
+				return null;
+			}
+			int[] page_index = new int[PAGES];
+			for(int i = 0; i < PAGES; i++) {
+				page_index[i] = buffer.getInt();
+			}
+			char[][] distinct_pages = new char[distinct][PAGE_SIZE];
+			for(int i = 0; i < distinct; i++) {
+				buffer.asCharBuffer().get(distinct_pages[i]);
+				buffer.position(buffer.position() + PAGE_SIZE * 2);
+			}
+			char[][] pages = new char[PAGES][];
+			for(int i = 0; i < PAGES; i++) {
+				if(page_index[i] < 0 || page_index[i] >= distinct) {
+					return null;
+				}
+				pages[i] = distinct_pages[page_index[i]];
+			}
+			//every char has to map to a class
+			for(int i = 0; i < distinct; i++) {
+				for(int j = 0; j < PAGE_SIZE; j++) {
+					if(distinct_pages[i][j] >= classes) {
+						return null;
+					}
+				}
+			}
+			ArrayList<String> ranges = new ArrayList<String>();
+			ranges.add("");
+			for(int i = 1; i < classes; i++) {
+				int length = buffer.getInt();
+				if(length < 0 || !fits(buffer, length * 2L + table_size * 4 + (states + 63) / 64 * 8L)) {
+					return null;
+				}
+				char[] chars = new char[length];
+				for(int j = 0; j < chars.length; j++) {
+					chars[j] = buffer.getChar();
+				}
+				ranges.add(new String(chars));
+			}
+			int[] table = new int[(int)table_size];
+			buffer.asIntBuffer().get(table);
+			buffer.position(buffer.position() + table.length * 4);
+			//a transition out of the table would only fail once a scan reaches it
+			for(int i = 0; i < table.length; i++) {
+				if(table[i] < DFA.DEAD || table[i] >= states) {
+					return null;
+				}
+			}
+			boolean[] finals = new boolean[states];
+			long[] accept = new long[(states + 63) / 64];
+			buffer.asLongBuffer().get(accept);
+			for(int i = 0; i < states; i++) {
+				finals[i] = (accept[i / 64] & (1L << (i % 64))) != 0;
+			}
+			return new DFA(new Alphabet(pages, ranges), table, finals, unminimized_size);
+		}
+		catch(RuntimeException re) {
+			//truncated or corrupt file
+			return null;
+		}
+	}
+	
+	/**
+	 * check the bytes a header promises are left in the buffer
+	 * @param buffer buffer being read
+	 * @param bytes bytes still to read
+	 * @return true: the buffer holds them, false: the file is truncated or corrupt
+	 */
+	private static boolean fits(ByteBuffer buffer, long bytes) {
+		return bytes <= buffer.remaining();
+	}
+}
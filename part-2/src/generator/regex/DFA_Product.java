@@ -0,0 +1,215 @@
+package generator.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+import global.Options;
+
+/**
+ * DFA_Product.java
+ * Product construction over dfas, for the & (intersection) and ~ (complement)
+ * regex operators. The product runs both dfas in lockstep over the classes
+ * both alphabets agree on; a pair of states accepts if both do (intersection),
+ * and a single dfa completed with a sink accepts where it didn't (complement).
+ * The table is spliced back into the regex's nfa with NFA.addAutomaton.
+ */
+public class DFA_Product {
+	
+	//chars each class of the product stands for (every char but NFA.EPSILON is in one)
+	private Char_Ranges[] classes;
+	//transition table, row per state, column per class (DFA.DEAD: no transition)
+	private int[] table;
+	//final flag for each state
+	private boolean[] finals;
+	
+	/**
+	 * build the product of two dfas, or the complement of one
+	 * @param a first dfa
+	 * @param b second dfa, null to complement a
+	 * @throws DFA_Budget_Exception thrown if the product needs more states than Options.DFA_STATE_BUDGET
+	 */
+	private DFA_Product(DFA a, DFA b) {
+		Alphabet alpha_a = a.getAlphabet();
+		Alphabet alpha_b = b == null ? null : b.getAlphabet();
+		int classes_a = alpha_a.size();
+		int classes_b = b == null ? 1 : alpha_b.size();
+		
+		//cut the char range wherever a class of either alphabet starts or stops
+		TreeSet<Integer> cuts = new TreeSet<Integer>();
+		cuts.add((int)Char_Ranges.MIN_CHAR);
+		cuts.add(Char_Ranges.MAX_CHAR + 1);
+		add_cuts(cuts, alpha_a);
+		if(b != null) {
+			add_cuts(cuts, alpha_b);
+		}
+		//intervals with the same pair of classes make one product class
+		HashMap<Integer, Integer> pair_class = new HashMap<Integer, Integer>();
+		ArrayList<Char_Ranges> ranges = new ArrayList<Char_Ranges>();
+		ArrayList<Integer> symbols_a = new ArrayList<Integer>();
+		ArrayList<Integer> symbols_b = new ArrayList<Integer>();
+		Integer lo = null;
+		for(int cut : cuts) {
+			if(lo != null) {
+				char letter = (char)(int)lo;
+				int symbol_a = alpha_a.classOf(letter);
+				int symbol_b = b == null ? 0 : alpha_b.classOf(letter);
+				Integer symbol = pair_class.get(symbol_a * classes_b + symbol_b);
+				if(symbol == null) {
+					symbol = ranges.size();
+					pair_class.put(symbol_a * classes_b + symbol_b, symbol);
+					ranges.add(new Char_Ranges());
+					symbols_a.add(symbol_a);
+					symbols_b.add(symbol_b);
+				}
+				ranges.get(symbol).add(letter, (char)(cut - 1));
+			}
+			lo = cut;
+		}
+		this.classes = ranges.toArray(new Char_Ranges[ranges.size()]);
+		int count = this.classes.length;
+		
+		//pairs of states breadth first from the start, DFA.DEAD is a state of its own
+		int[] table_a = a.getTable();
+		int[] table_b = b == null ? null : b.getTable();
+		boolean[] finals_a = a.getFinals();
+		boolean[] finals_b = b == null ? null : b.getFinals();
+		int size_b = b == null ? 0 : b.size();
+		HashMap<Long, Integer> index = new HashMap<Long, Integer>();
+		ArrayList<int[]> pairs = new ArrayList<int[]>();
+		ArrayList<int[]> rows = new ArrayList<int[]>();
+		ArrayDeque<Integer> unmarked = new ArrayDeque<Integer>();
+		int[] start = new int[] {0, b == null ? DFA.DEAD : 0};
+		index.put(pair_key(start, size_b), 0);
+		pairs.add(start);
+		unmarked.add(0);
+		while(!unmarked.isEmpty()) {
+			int state = unmarked.poll();
+			int[] pair = pairs.get(state);
+			int[] row = new int[count];
+			for(int symbol = 0; symbol < count; symbol++) {
+				int next_a = pair[0] == DFA.DEAD ? DFA.DEAD : table_a[pair[0] * classes_a + symbols_a.get(symbol)];
+				int next_b = DFA.DEAD;
+				if(b != null) {
+					next_b = pair[1] == DFA.DEAD ? DFA.DEAD : table_b[pair[1] * classes_b + symbols_b.get(symbol)];
+					//either side dead, the intersection can't accept
+					if(next_a == DFA.DEAD || next_b == DFA.DEAD) {
+						row[symbol] = DFA.DEAD;
+						continue;
+					}
+				}
+				int[] next_pair = new int[] {next_a, next_b};
+				Integer next = index.get(pair_key(next_pair, size_b));
+				if(next == null) {
+					if(Options.DFA_STATE_BUDGET > 0 && pairs.size() >= Options.DFA_STATE_BUDGET) {
+						throw new DFA_Budget_Exception(Options.DFA_STATE_BUDGET);
+					}
+					next = pairs.size();
+					index.put(pair_key(next_pair, size_b), next);
+					pairs.add(next_pair);
+					unmarked.add(next);
+				}
+				row[symbol] = next;
+			}
+			rows.add(row);
+		}
+		
+		this.table = new int[pairs.size() * count];
+		this.finals = new boolean[pairs.size()];
+		for(int i = 0; i < pairs.size(); i++) {
+			System.arraycopy(rows.get(i), 0, this.table, i * count, count);
+			int[] pair = pairs.get(i);
+			boolean final_a = pair[0] != DFA.DEAD && finals_a[pair[0]];
+			if(b == null) {
+				this.finals[i] = !final_a;
+			}
+			else {
+				this.finals[i] = final_a && finals_b[pair[1]];
+			}
+		}
+		
+		if(Options.DEBUG) {
+			System.out.println("   [DFA_Product] " + (b == null ? "complement" : "intersection") + ": " +
+					pairs.size() + " states, " + count + " classes");
+		}
+	}
+	
+	/**
+	 * build the dfa accepting what both dfas accept
+	 * @param a first dfa
+	 * @param b second dfa
+	 * @return product of the dfas
+	 * @throws DFA_Budget_Exception thrown if the product needs more states than Options.DFA_STATE_BUDGET
+	 */
+	public static DFA_Product intersect(DFA a, DFA b) {
+		return new DFA_Product(a, b);
+	}
+	
+	/**
+	 * build the dfa accepting every string (of chars but NFA.EPSILON) a dfa doesn't
+	 * @param a dfa to complement
+	 * @return complement of the dfa
+	 * @throws DFA_Budget_Exception thrown if the complement needs more states than Options.DFA_STATE_BUDGET
+	 */
+	public static DFA_Product complement(DFA a) {
+		return new DFA_Product(a, null);
+	}
+	
+	/**
+	 * add the points where every class of an alphabet starts and stops
+	 * @param cuts set of cut points to add to
+	 * @param alphabet alphabet to cut at
+	 */
+	private static void add_cuts(TreeSet<Integer> cuts, Alphabet alphabet) {
+		for(int symbol = 1; symbol < alphabet.size(); symbol++) {
+			String pairs = alphabet.getRanges(symbol);
+			for(int i = 0; i < pairs.length(); i += 2) {
+				cuts.add((int)pairs.charAt(i));
+				cuts.add(pairs.charAt(i+1) + 1);
+			}
+		}
+	}
+	
+	/**
+	 * get the index key of a pair of states
+	 * @param pair state of each dfa (DFA.DEAD allowed)
+	 * @param size_b number of states of the second dfa
+	 * @return key unique to the pair
+	 */
+	private static long pair_key(int[] pair, int size_b) {
+		return (long)(pair[0] + 1) * (size_b + 1) + (pair[1] + 1);
+	}
+	
+	/**
+	 * accessor for the number of states
+	 * @return number of states
+	 */
+	public int size() {
+		return this.finals.length;
+	}
+	
+	/**
+	 * accessor for the chars of every class
+	 * @return ranges of each class, indexed by class
+	 */
+	public Char_Ranges[] getClasses() {
+		return this.classes;
+	}
+	
+	/**
+	 * accessor for the transition table
+	 * @return table, row per state, column per class
+	 */
+	public int[] getTable() {
+		return this.table;
+	}
+	
+	/**
+	 * accessor for the final flags
+	 * @return final flag for each state
+	 */
+	public boolean[] getFinals() {
+		return this.finals;
+	}
+}
@@ -0,0 +1,228 @@
+package generator.regex;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import global.Options;
+
+/**
+ * DFA_Profile.java
+ * Per-state visit counts of a dfa run over a sample of the text it will scan.
+ * Renumbering a dfa by its profile (DFA.renumber) puts the hot states, and so
+ * their table rows, next to each other at the front of the table, so the scan
+ * loop touches fewer cache lines. Profiles are saved next to the cached dfa
+ * (see DFA_Cache) and count states in the order subset construction made them.
+ * A saved profile carries the key of its regex and sample, so it is only
+ * reused for the dfa it was recorded on.
+ */
+public class DFA_Profile {
+	
+	//"MRDP"
+	private static final int MAGIC = 0x4D524450;
+	//bump whenever the file format changes
+	private static final int VERSION = 2;
+	
+	//sample text read from Options.PROFILE_SAMPLE, and the file it came from
+	private static String sample;
+	private static String sample_file;
+	
+	//visits of each state
+	private long[] visits;
+	//regex and sample the profile was recorded for (see DFA_Cache), empty if unknown
+	private String key;
+	
+	/**
+	 * setup profile with no visits
+	 * @param states number of states of the profiled dfa
+	 */
+	public DFA_Profile(int states) {
+		this.visits = new long[states];
+		this.key = "";
+	}
+	
+	/**
+	 * run a dfa over a sample and count the visits of every state
+	 * @param dfa dfa to profile
+	 * @param text sample of the text the dfa will scan
+	 * @param unanchored true: the dfa is run once over the whole sample (search dfas),
+	 * false: a longest match is tried at every offset a match doesn't cover (anchored patterns)
+	 * @return profile of the dfa
+	 */
+	public static DFA_Profile record(DFA dfa, CharSequence text, boolean unanchored) {
+		DFA_Profile profile = new DFA_Profile(dfa.size());
+		final long[] visits = profile.visits;
+		final int[] table = dfa.getTable();
+		final boolean[] finals = dfa.getFinals();
+		final char[][] class_map = dfa.getAlphabet().getPages();
+		final int classes = dfa.getAlphabet().size();
+		if(unanchored) {
+			int state = 0;
+			visits[0]++;
+			for(int i = 0; i < text.length(); i++) {
+				char letter = text.charAt(i);
+				state = table[state * classes + class_map[letter >>> 8][letter & 0xFF]];
+				//pruned dead end, a search dfa starts over
+				if(state == DFA.DEAD) {
+					state = 0;
+				}
+				visits[state]++;
+			}
+			return profile;
+		}
+		int i = 0;
+		while(i < text.length()) {
+			int state = 0;
+			int end = i;
+			visits[0]++;
+			for(int j = i; j < text.length(); j++) {
+				char letter = text.charAt(j);
+				state = table[state * classes + class_map[letter >>> 8][letter & 0xFF]];
+				if(state == DFA.DEAD) {
+					break;
+				}
+				visits[state]++;
+				if(finals[state]) {
+					end = j + 1;
+				}
+				if(dfa.isExhausted(state)) {
+					break;
+				}
+			}
+			i = end > i ? end : i + 1;
+		}
+		return profile;
+	}
+	
+	/**
+	 * accessor for the number of states profiled
+	 * @return number of states
+	 */
+	public int size() {
+		return this.visits.length;
+	}
+	
+	/**
+	 * accessor for the visits of a state
+	 * @param state state to look up
+	 * @return times the state was entered during the profiling run
+	 */
+	public long getVisits(int state) {
+		return this.visits[state];
+	}
+	
+	/**
+	 * accessor for the key of the regex and sample the profile was recorded for
+	 * @return the key, empty if unknown
+	 */
+	String getKey() {
+		return this.key;
+	}
+	
+	/**
+	 * mutator for the key of the regex and sample the profile was recorded for
+	 * @param key the key (see DFA_Cache)
+	 */
+	void setKey(String key) {
+		this.key = key;
+	}
+	
+	/**
+	 * get the new number of every state, the start stays 0 and the rest go
+	 * hottest first (ties keep their old order)
+	 * @return new number of each old state
+	 */
+	int[] order() {
+		Integer[] states = new Integer[this.visits.length - 1];
+		for(int i = 0; i < states.length; i++) {
+			states[i] = i + 1;
+		}
+		Arrays.sort(states, (a, b) -> Long.compare(this.visits[b], this.visits[a]));
+		int[] order = new int[this.visits.length];
+		for(int i = 0; i < states.length; i++) {
+			order[states[i]] = i + 1;
+		}
+		return order;
+	}
+	
+	/**
+	 * write the profile to a file
+	 * @param file file to write
+	 * @throws IOException thrown if the file can't be written
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(this.key);
+			out.writeInt(this.visits.length);
+			for(int i = 0; i < this.visits.length; i++) {
+				out.writeLong(this.visits[i]);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * read a profile written by save
+	 * @param file file to read
+	 * @return the profile, null if the file isn't a profile
+	 * @throws IOException thrown if the file can't be read
+	 */
+	public static DFA_Profile load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			String key = in.readUTF();
+			int states = in.readInt();
+			//a corrupt count must not allocate more than the file holds
+			if(states < 1 || states > (file.length() - 8) / 8) {
+				return null;
+			}
+			DFA_Profile profile = new DFA_Profile(states);
+			profile.key = key;
+			for(int i = 0; i < profile.visits.length; i++) {
+				profile.visits[i] = in.readLong();
+			}
+			return profile;
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * get the sample text named by Options.PROFILE_SAMPLE (read once)
+	 * @return the sample, null if profiling is off or the file can't be read
+	 */
+	static synchronized String sample() {
+		if(Options.PROFILE_SAMPLE == null) {
+			return null;
+		}
+		if(!Options.PROFILE_SAMPLE.equals(sample_file)) {
+			sample_file = Options.PROFILE_SAMPLE;
+			try {
+				sample = new String(Files.readAllBytes(Paths.get(sample_file)), StandardCharsets.UTF_8);
+			}
+			catch(IOException ioe) {
+				if(Options.DEBUG) {
+					System.out.println("   [DFA_Profile] could not read " + sample_file + ": " + ioe);
+				}
+				sample = null;
+			}
+		}
+		return sample;
+	}
+}
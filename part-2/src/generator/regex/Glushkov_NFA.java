@@ -0,0 +1,752 @@
+package generator.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import global.Options;
+
+/**
+ * Glushkov_NFA.java
+ * Bit-parallel simulation of a regex's position (glushkov) automaton.
+ * Every lettered edge of the thompson nfa is a position, and a set of
+ * positions fits in one long, so a step is a few table lookups and an and:
+ * the positions that can follow the current ones, masked by the positions
+ * the next char's class can enter. Nothing is built per state, so patterns
+ * of up to 64 positions compile in about the time it takes to parse them.
+ * A counted repetition of one char class, like [0-9]{1,1000}, is a single
+ * position whose copies are tracked by a counter, so it fits as well.
+ */
+public class Glushkov_NFA implements Regex_Pattern {
+	
+	//most positions one mask holds
+	public static final int MAX_POSITIONS = 64;
+	
+	//char classes, class map pages and class count
+	private Alphabet alphabet;
+	private char[][] class_map;
+	private int classes;
+	//positions that can follow a set of positions, one 256 entry table per byte of the set
+	private long[] follow;
+	//positions each char class can enter
+	private long[] masks;
+	//positions that can start a match
+	private long first;
+	//positions a match can end on
+	private long last;
+	//positions that still have a follower (a longer match is possible)
+	private long more;
+	//the regex matches the empty string
+	private boolean nullable;
+	private int positions;
+	//position of each counter, how many copies are entered at once, and the least
+	//and most copies of its repetition (null if there are no counters)
+	private long[] counter_bits;
+	private int[] counter_width;
+	private int[] counter_min;
+	private int[] counter_max;
+	private Regex_Stats stats;
+	
+	/**
+	 * build the bit-parallel automaton of an nfa
+	 * (a counted repetition of one char class too long for the mask is one
+	 * position with a counter, see collapse)
+	 * @param nfa nfa of the regex
+	 * @return the automaton, null if the nfa has more than MAX_POSITIONS positions
+	 */
+	public static Glushkov_NFA build(NFA nfa) {
+		long time = System.nanoTime();
+		Alphabet alphabet = new Alphabet(nfa);
+		//one position per (state, next) pair, a char class is a single edge
+		HashMap<Long, Integer> index = new HashMap<Long, Integer>();
+		ArrayList<Integer> targets = new ArrayList<Integer>();
+		//classes each position is entered on
+		ArrayList<BitSet> entered_on = new ArrayList<BitSet>();
+		//positions leaving each nfa state
+		BitSet[] out = new BitSet[nfa.size()];
+		for(int s = 0; s < nfa.size(); s++) {
+			out[s] = new BitSet();
+			for(NFA.State.Transition trans : nfa.get(s).getTransitions()) {
+				if(trans.getLetter() == NFA.EPSILON) {
+					continue;
+				}
+				Long key = (long)s * nfa.size() + trans.getNext();
+				Integer p = index.get(key);
+				if(p == null) {
+					p = index.size();
+					index.put(key, p);
+					targets.add(trans.getNext());
+					entered_on.add(new BitSet());
+					out[s].set(p);
+				}
+				for(int symbol : alphabet.classesIn(trans.getLo(), trans.getHi())) {
+					entered_on.get(p).set(symbol);
+				}
+			}
+		}
+		int count = index.size();
+		
+		BitSet[] closures = nfa.getClosures();
+		BitSet finals = new BitSet();
+		for(int i = 0; i < nfa.size(); i++) {
+			if(nfa.get(i).getEnd()) {
+				finals.set(i);
+			}
+		}
+		//after a position the nfa is in the closure of its target
+		BitSet[] follows = new BitSet[count];
+		BitSet last = new BitSet();
+		for(int p = 0; p < count; p++) {
+			follows[p] = new BitSet();
+			BitSet closure = closures[targets.get(p)];
+			for(int s = closure.nextSetBit(0); s >= 0; s = closure.nextSetBit(s+1)) {
+				follows[p].or(out[s]);
+			}
+			if(closure.intersects(finals)) {
+				last.set(p);
+			}
+		}
+		BitSet start = closures[nfa.getStart()];
+		BitSet first = new BitSet();
+		for(int s = start.nextSetBit(0); s >= 0; s = start.nextSetBit(s+1)) {
+			first.or(out[s]);
+		}
+		
+		BitSet[] preds = new BitSet[count];
+		for(int p = 0; p < count; p++) {
+			preds[p] = new BitSet();
+		}
+		for(int p = 0; p < count; p++) {
+			for(int q = follows[p].nextSetBit(0); q >= 0; q = follows[p].nextSetBit(q+1)) {
+				preds[q].set(p);
+			}
+		}
+		//drop positions that can't reach the end of a match
+		BitSet live = (BitSet)last.clone();
+		ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+		for(int p = last.nextSetBit(0); p >= 0; p = last.nextSetBit(p+1)) {
+			work.push(p);
+		}
+		while(!work.isEmpty()) {
+			BitSet from = preds[work.pop()];
+			for(int p = from.nextSetBit(0); p >= 0; p = from.nextSetBit(p+1)) {
+				if(!live.get(p)) {
+					live.set(p);
+					work.push(p);
+				}
+			}
+		}
+		for(int p = 0; p < count; p++) {
+			follows[p].and(live);
+			preds[p].and(live);
+		}
+		first.and(live);
+		
+		//counted repetitions too long for the mask get a counter each
+		ArrayList<int[]> counters = new ArrayList<int[]>();
+		if(live.cardinality() > MAX_POSITIONS) {
+			collapse(nfa, index, entered_on, follows, preds, first, last, live, counters);
+		}
+		int positions = live.cardinality();
+		if(positions > MAX_POSITIONS) {
+			return null;
+		}
+		
+		//number the live positions from 0
+		int[] bit = new int[count];
+		int next_bit = 0;
+		for(int p = live.nextSetBit(0); p >= 0; p = live.nextSetBit(p+1)) {
+			bit[p] = next_bit++;
+		}
+		long[] follow_masks = new long[positions];
+		long[] masks = new long[alphabet.size()];
+		long first_mask = 0;
+		long last_mask = 0;
+		long more = 0;
+		for(int p = live.nextSetBit(0); p >= 0; p = live.nextSetBit(p+1)) {
+			long b = 1L << bit[p];
+			for(int q = follows[p].nextSetBit(0); q >= 0; q = follows[p].nextSetBit(q+1)) {
+				follow_masks[bit[p]] |= 1L << bit[q];
+			}
+			if(first.get(p)) {
+				first_mask |= b;
+			}
+			if(last.get(p)) {
+				last_mask |= b;
+			}
+			//positions that still have a follower
+			if(!follows[p].isEmpty()) {
+				more |= b;
+			}
+			for(int symbol = entered_on.get(p).nextSetBit(0); symbol >= 0; symbol = entered_on.get(p).nextSetBit(symbol+1)) {
+				masks[symbol] |= b;
+			}
+		}
+		
+		//follow table per byte of a position set
+		int chunks = Math.max((positions + 7) / 8, 1);
+		long[] follow = new long[chunks * 256];
+		for(int k = 0; k < chunks; k++) {
+			for(int b = 1; b < 256; b++) {
+				//reuse the entry without the lowest bit
+				int low = Integer.numberOfTrailingZeros(b);
+				int p = k * 8 + low;
+				long add = p < positions ? follow_masks[p] : 0;
+				follow[k * 256 + b] = follow[k * 256 + (b & (b - 1))] | add;
+			}
+		}
+		
+		Glushkov_NFA result = new Glushkov_NFA();
+		result.alphabet = alphabet;
+		result.class_map = alphabet.getPages();
+		result.classes = alphabet.size();
+		result.follow = follow;
+		result.masks = masks;
+		result.first = first_mask;
+		result.last = last_mask;
+		result.more = more;
+		result.nullable = start.intersects(finals);
+		result.positions = positions;
+		if(!counters.isEmpty()) {
+			result.counter_bits = new long[counters.size()];
+			result.counter_width = new int[counters.size()];
+			result.counter_min = new int[counters.size()];
+			result.counter_max = new int[counters.size()];
+			for(int j = 0; j < counters.size(); j++) {
+				int[] counter = counters.get(j);
+				result.counter_bits[j] = 1L << bit[counter[0]];
+				result.counter_width[j] = counter[1];
+				result.counter_min[j] = counter[2];
+				result.counter_max[j] = counter[3];
+			}
+		}
+		result.stats = new Regex_Stats();
+		result.stats.setNFA(nfa);
+		result.stats.setClasses(result.classes);
+		result.stats.setBuildTime(System.nanoTime() - time);
+		if(Options.DEBUG) {
+			System.out.println("   [Glushkov] " + positions + " positions, " + counters.size() + " counters");
+		}
+		return result;
+	}
+	
+	/**
+	 * turn chains of copies a counted repetition of one char class made (see
+	 * NFA.getChains) into one position each, longest first until the positions
+	 * fit in a mask. The copies of c{min,max} are positions 1..max in a row;
+	 * the first width of them are entered from the same positions (width is
+	 * more than 1 for a reversed repetition), and every one from min on leaves
+	 * to the same positions, so which copies are active is a set of counts that
+	 * all go up by one on every char of the class (Counts)
+	 * @param nfa nfa the positions come from
+	 * @param index position of each (state, next) pair
+	 * @param entered_on classes each position is entered on
+	 * @param follows positions after each position, updated
+	 * @param preds positions before each position
+	 * @param first positions a match starts on, updated
+	 * @param last positions a match ends on, updated
+	 * @param live positions that can reach the end of a match, collapsed copies are removed
+	 * @param counters position, width, min and max of every counter made, added to
+	 */
+	private static void collapse(NFA nfa, HashMap<Long, Integer> index, ArrayList<BitSet> entered_on,
+			BitSet[] follows, BitSet[] preds, BitSet first, BitSet last, BitSet live, ArrayList<int[]> counters) {
+		//chains that are still one position per copy, with their width and min
+		ArrayList<int[]> chains = new ArrayList<int[]>();
+		ArrayList<int[]> bounds = new ArrayList<int[]>();
+		for(int[] pairs : nfa.getChains()) {
+			int[] chain = new int[pairs.length / 2];
+			for(int i = 0; chain != null && i < chain.length; i++) {
+				Integer p = index.get((long)pairs[2*i] * nfa.size() + pairs[2*i+1]);
+				if(p == null || !live.get(p)) {
+					chain = null;
+				}
+				else {
+					chain[i] = p;
+				}
+			}
+			int[] bound = chain == null ? null : counted(chain, entered_on, follows, preds, first, last);
+			if(bound != null) {
+				chains.add(chain);
+				bounds.add(bound);
+			}
+		}
+		while(live.cardinality() > MAX_POSITIONS && !chains.isEmpty()) {
+			int longest = 0;
+			for(int j = 1; j < chains.size(); j++) {
+				if(chains.get(j).length > chains.get(longest).length) {
+					longest = j;
+				}
+			}
+			int[] chain = chains.remove(longest);
+			int[] bound = bounds.remove(longest);
+			//the first copy stands for the whole chain
+			BitSet copies = new BitSet();
+			for(int i = 1; i < chain.length; i++) {
+				copies.set(chain[i]);
+			}
+			for(int p = live.nextSetBit(0); p >= 0; p = live.nextSetBit(p+1)) {
+				follows[p].andNot(copies);
+			}
+			follows[chain[0]] = (BitSet)follows[chain[chain.length-1]].clone();
+			last.set(chain[0], last.get(chain[chain.length-1]));
+			first.andNot(copies);
+			last.andNot(copies);
+			live.andNot(copies);
+			counters.add(new int[] {chain[0], bound[0], bound[1], chain.length});
+		}
+	}
+	
+	/**
+	 * check a chain of positions can run on a counter
+	 * @param chain positions of the copies, in order
+	 * @param entered_on classes each position is entered on
+	 * @param follows positions after each position
+	 * @param preds positions before each position
+	 * @param first positions a match starts on
+	 * @param last positions a match ends on
+	 * @return how many copies are entered from outside the chain (width) and the
+	 * first copy that can leave it (min), null if the chain doesn't fit a counter
+	 */
+	private static int[] counted(int[] chain, ArrayList<BitSet> entered_on, BitSet[] follows, BitSet[] preds, BitSet first, BitSet last) {
+		int k = chain.length;
+		BitSet members = new BitSet();
+		for(int i = 0; i < k; i++) {
+			int p = chain[i];
+			//copies of one class, no copy loops on itself
+			if(!entered_on.get(p).equals(entered_on.get(chain[0])) || follows[p].get(p) || members.get(p)) {
+				return null;
+			}
+			if(i > 0 && !follows[chain[i-1]].get(p)) {
+				return null;
+			}
+			members.set(p);
+		}
+		//copies 1..width are entered from the same positions, the rest only from the copy before
+		BitSet entry = preds[chain[0]];
+		boolean entry_first = first.get(chain[0]);
+		if(entry.intersects(members)) {
+			return null;
+		}
+		int width = 1;
+		for(int i = 1; i < k; i++) {
+			BitSet from = (BitSet)preds[chain[i]].clone();
+			from.clear(chain[i-1]);
+			boolean from_first = first.get(chain[i]);
+			if(width == i && from.equals(entry) && from_first == entry_first) {
+				width++;
+			}
+			else if(!from.isEmpty() || from_first) {
+				return null;
+			}
+		}
+		//copies min..k leave to the same positions, the rest only to the copy after
+		BitSet exit = follows[chain[k-1]];
+		boolean exit_last = last.get(chain[k-1]);
+		if(exit.intersects(members)) {
+			return null;
+		}
+		int min = k;
+		for(int i = k-2; i >= 0; i--) {
+			BitSet to = (BitSet)follows[chain[i]].clone();
+			to.clear(chain[i+1]);
+			boolean to_last = last.get(chain[i]);
+			if(min == i+2 && to.equals(exit) && to_last == exit_last) {
+				min--;
+			}
+			else if(!to.isEmpty() || to_last) {
+				return null;
+			}
+		}
+		return new int[] {width, min};
+	}
+	
+	/**
+	 * setup empty automaton (filled in by build)
+	 */
+	private Glushkov_NFA() {
+	}
+	
+	/**
+	 * accessor for the number of positions
+	 * @return number of positions
+	 */
+	public int size() {
+		return this.positions;
+	}
+	
+	/**
+	 * check if some counted repetition runs on a counter
+	 * @return true: there are counters, false: every copy is a position
+	 */
+	public boolean hasCounters() {
+		return this.counter_bits != null;
+	}
+	
+	/**
+	 * make empty counting sets for one run
+	 * @return the counting sets, null if there are no counters
+	 */
+	private Counts counts() {
+		return this.counter_bits == null ? null : new Counts();
+	}
+	
+	/**
+	 * accessor for the char classes of this automaton
+	 * @return alphabet of this automaton
+	 */
+	public Alphabet getAlphabet() {
+		return this.alphabet;
+	}
+	
+	/**
+	 * accessor for the sizes and build times of this automaton
+	 * @return stats of this automaton
+	 */
+	@Override
+	public Regex_Stats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * make a new cursor at the start of this automaton
+	 * @return new cursor over this automaton
+	 */
+	@Override
+	public Cursor matcher() {
+		return new Cursor();
+	}
+	
+	/**
+	 * find the positions that can follow a set of positions
+	 * @param set current positions
+	 * @return positions reachable on the next char (before masking)
+	 */
+	private long follow(long set) {
+		final long[] follow = this.follow;
+		long reach = 0;
+		for(int k = 0; set != 0; k += 256, set >>>= 8) {
+			reach |= follow[k + (int)(set & 0xFF)];
+		}
+		return reach;
+	}
+	
+	/**
+	 * run the longest-match loop from the start over text[from, to)
+	 * @param text text to scan
+	 * @param from offset to start the match at
+	 * @param to offset to stop scanning at
+	 * @return offset just past the longest non-empty match, -1 if nothing matched
+	 */
+	public int longestMatchEnd(CharSequence text, int from, int to) {
+		return this.longest_match_end(text, from, to, this.counts());
+	}
+	
+	/**
+	 * run the longest-match loop from the start over text[from, to)
+	 * @param text text to scan
+	 * @param from offset to start the match at
+	 * @param to offset to stop scanning at
+	 * @param counts empty counting sets, null if there are no counters
+	 * @return offset just past the longest non-empty match, -1 if nothing matched
+	 */
+	private int longest_match_end(CharSequence text, int from, int to, Counts counts) {
+		final long[] masks = this.masks;
+		final char[][] class_map = this.class_map;
+		long reach = this.first;
+		int best = -1;
+		for(int i = from; i < to; i++) {
+			char letter = text.charAt(i);
+			long mask = masks[class_map[letter >>> 8][letter & 0xFF]];
+			long current = reach & mask;
+			if(counts != null) {
+				current = counts.step(current, mask);
+			}
+			if(current == 0) {
+				break;
+			}
+			//counters below their min can't be left yet
+			long done = counts == null ? current : counts.gate(current);
+			if((done & this.last) != 0) {
+				best = i + 1;
+				//nothing longer can match
+				if(counts == null ? (current & this.more) == 0 : !counts.canContinue(current)) {
+					break;
+				}
+			}
+			reach = this.follow(done);
+		}
+		return best;
+	}
+	
+	/**
+	 * run unanchored over the whole text, a new match may start before every char
+	 * @param text text to search
+	 * @return offset just past the last char any non-empty match ends on, -1 if none
+	 */
+	int lastEnd(CharSequence text) {
+		final long[] masks = this.masks;
+		final char[][] class_map = this.class_map;
+		final Counts counts = this.counts();
+		long reach = this.first;
+		int last_end = -1;
+		for(int i = 0; i < text.length(); i++) {
+			char letter = text.charAt(i);
+			long mask = masks[class_map[letter >>> 8][letter & 0xFF]];
+			long current = reach & mask;
+			if(counts != null) {
+				current = counts.gate(counts.step(current, mask));
+			}
+			if((current & this.last) != 0) {
+				last_end = i + 1;
+			}
+			reach = this.follow(current) | this.first;
+		}
+		return last_end;
+	}
+	
+	/**
+	 * run this automaton (of a reversed regex) unanchored backwards from limit
+	 * @param text text to search
+	 * @param limit offset no match ends past
+	 * @return set of offsets a non-empty match of the original regex starts at
+	 */
+	BitSet starts(CharSequence text, int limit) {
+		final long[] masks = this.masks;
+		final char[][] class_map = this.class_map;
+		final Counts counts = this.counts();
+		BitSet starts = new BitSet(limit);
+		long reach = this.first;
+		for(int i = limit - 1; i >= 0; i--) {
+			char letter = text.charAt(i);
+			long mask = masks[class_map[letter >>> 8][letter & 0xFF]];
+			long current = reach & mask;
+			if(counts != null) {
+				current = counts.gate(counts.step(current, mask));
+			}
+			if((current & this.last) != 0) {
+				starts.set(i);
+			}
+			reach = this.follow(current) | this.first;
+		}
+		return starts;
+	}
+	
+	/**
+	 * scan position in the automaton, the set of positions it is at
+	 */
+	public class Cursor implements Regex_Matcher {
+		
+		//no char read yet
+		private boolean at_start;
+		//positions after the chars read so far
+		private long current;
+		//counts of the counted positions, null if there are no counters
+		private Counts counts;
+		
+		/**
+		 * setup cursor at the start
+		 */
+		public Cursor() {
+			this.counts = counts();
+			this.reset();
+		}
+		
+		/**
+		 * goto the next set of positions via the given letter
+		 * @param letter value to transition on
+		 */
+		@Override
+		public void gotoNext(char letter) {
+			if(this.at_start || this.current != 0) {
+				long reach = this.at_start ? first : follow(this.done());
+				long mask = masks[class_map[letter >>> 8][letter & 0xFF]];
+				this.current = reach & mask;
+				if(this.counts != null) {
+					this.current = this.counts.step(this.current, mask);
+				}
+				this.at_start = false;
+			}
+		}
+		
+		/**
+		 * get the positions that can be left (counters below their min can't)
+		 * @return current positions without the counters that aren't done
+		 */
+		private long done() {
+			return this.counts == null ? this.current : this.counts.gate(this.current);
+		}
+		
+		/**
+		 * check if a match ends at the current position
+		 * @return true: in an accept state, false: not
+		 */
+		@Override
+		public boolean atFinal() {
+			return this.at_start ? nullable : (this.done() & last) != 0;
+		}
+		
+		/**
+		 * check if the cursor is dead
+		 * @return true: no position left, false: not
+		 */
+		@Override
+		public boolean atDead() {
+			return !this.at_start && this.current == 0;
+		}
+		
+		/**
+		 * check if stepping further could still reach an accept state
+		 * @return true: a longer match is possible, false: it is not
+		 */
+		@Override
+		public boolean canContinue() {
+			if(this.at_start) {
+				return first != 0;
+			}
+			return this.counts == null ? (this.current & more) != 0 : this.counts.canContinue(this.current);
+		}
+		
+		/**
+		 * resets this cursor to the start
+		 */
+		@Override
+		public void reset() {
+			this.at_start = true;
+			this.current = 0;
+			if(this.counts != null) {
+				this.counts.clear();
+			}
+		}
+		
+		/**
+		 * run the whole longest-match loop from the start over text[from, to)
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return offset just past the longest non-empty match, -1 if nothing matched
+		 */
+		@Override
+		public int longestMatchEnd(CharSequence text, int from, int to) {
+			this.reset();
+			return longest_match_end(text, from, to, this.counts);
+		}
+	}
+	
+	/**
+	 * counting sets of the counters during one run. Every char of a counter's
+	 * class moves all its counts up by one (a count past max is dropped) and
+	 * any other char empties it, so a count is kept as the tick it was entered
+	 * at, oldest first: the oldest has the highest count, the newest the lowest.
+	 * An entry stands for counts 1..width at the tick it was made
+	 */
+	private class Counts {
+		
+		//ticks entries were made at, a ring of max slots per counter
+		private int[][] entries;
+		private int[] head;
+		private int[] size;
+		//chars of the class read since the counter was last empty
+		private int[] tick;
+		
+		/**
+		 * setup empty counting sets
+		 */
+		Counts() {
+			this.entries = new int[counter_bits.length][];
+			for(int j = 0; j < counter_bits.length; j++) {
+				this.entries[j] = new int[counter_max[j]];
+			}
+			this.head = new int[counter_bits.length];
+			this.size = new int[counter_bits.length];
+			this.tick = new int[counter_bits.length];
+		}
+		
+		/**
+		 * empty every counter
+		 */
+		void clear() {
+			for(int j = 0; j < this.size.length; j++) {
+				this.size[j] = 0;
+			}
+		}
+		
+		/**
+		 * step every counter over a char
+		 * @param next positions entered on the char (before the counters)
+		 * @param mask positions the char's class can enter
+		 * @return next with each counter's position set if its set isn't empty
+		 */
+		long step(long next, long mask) {
+			for(int j = 0; j < counter_bits.length; j++) {
+				long b = counter_bits[j];
+				if((mask & b) == 0) {
+					this.size[j] = 0;
+					continue;
+				}
+				int[] entries = this.entries[j];
+				int max = counter_max[j];
+				if(this.size[j] > 0) {
+					this.tick[j]++;
+					//counts past max are dropped, oldest first
+					while(this.size[j] > 0 && 1 + this.tick[j] - entries[this.head[j]] > max) {
+						this.head[j] = (this.head[j] + 1) % max;
+						this.size[j]--;
+					}
+				}
+				if((next & b) != 0) {
+					if(this.size[j] == 0) {
+						this.head[j] = 0;
+						this.tick[j] = 0;
+					}
+					entries[(this.head[j] + this.size[j]) % max] = this.tick[j];
+					this.size[j]++;
+				}
+				next = this.size[j] > 0 ? next | b : next & ~b;
+			}
+			return next;
+		}
+		
+		/**
+		 * check if a counter has a count it can be left at
+		 * @param j counter to check
+		 * @return true: some count is at least min, false: none is
+		 */
+		private boolean exits(int j) {
+			return this.size[j] > 0 && counter_width[j] + this.tick[j] - this.entries[j][this.head[j]] >= counter_min[j];
+		}
+		
+		/**
+		 * drop the positions of the counters that can't be left yet
+		 * @param current current positions
+		 * @return current without counters below their min
+		 */
+		long gate(long current) {
+			for(int j = 0; j < counter_bits.length; j++) {
+				if((current & counter_bits[j]) != 0 && !this.exits(j)) {
+					current &= ~counter_bits[j];
+				}
+			}
+			return current;
+		}
+		
+		/**
+		 * check if stepping further could still reach an accept state
+		 * @param current current positions
+		 * @return true: a position has a follower or a counter can count on, false: neither
+		 */
+		boolean canContinue(long current) {
+			if((this.gate(current) & more) != 0) {
+				return true;
+			}
+			for(int j = 0; j < counter_bits.length; j++) {
+				//the newest entry has the lowest count
+				if((current & counter_bits[j]) != 0 &&
+						1 + this.tick[j] - this.entries[j][(this.head[j] + this.size[j] - 1) % counter_max[j]] < counter_max[j]) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package generator.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import global.Options;
+
+/**
+ * Lazy_DFA.java
+ * DFA that builds its states from an nfa on demand while scanning.
+ * Built states are kept in a bounded cache that is flushed when full,
+ * so patterns with a huge full dfa still run in bounded memory.
+ * The flattened nfa is shared, every Cursor keeps its own state cache.
+ */
+public class Lazy_DFA implements Regex_Pattern {
+	
+	//transition that hasn't been built yet
+	private static final int UNKNOWN = -2;
+	
+	//char classes, class map pages and class count
+	private Alphabet alphabet;
+	private char[][] class_map;
+	private int classes;
+	//nfa in a flat form: epsilon closures and the lettered transitions of each state
+	private BitSet[] closures;
+	private int[][] symbols;
+	private int[][] targets;
+	private BitSet nfa_finals;
+	//nfa states that can still reach a final state
+	private BitSet nfa_live;
+	private BitSet start_set;
+	//max number of states a cursor caches
+	private int capacity;
+	//sizes and build times (no dfa states are built up front)
+	private Regex_Stats stats;
+	
+	/**
+	 * setup a lazy dfa for the given nfa, no dfa states are built yet
+	 * @param nfa nfa to simulate
+	 */
+	public Lazy_DFA(NFA nfa) {
+		this.alphabet = new Alphabet(nfa);
+		this.class_map = this.alphabet.getPages();
+		this.classes = this.alphabet.size();
+		this.closures = nfa.getClosures();
+		this.symbols = new int[nfa.size()][];
+		this.targets = new int[nfa.size()][];
+		this.nfa_finals = new BitSet();
+		for(int i = 0; i < nfa.size(); i++) {
+			ArrayList<NFA.State.Transition> trans = nfa.get(i).getTransitions();
+			//a range gives one (class, next) pair per class it holds
+			int[][] classes_in = new int[trans.size()][];
+			int count = 0;
+			for(int j = 0; j < trans.size(); j++) {
+				if(trans.get(j).getLetter() != NFA.EPSILON) {
+					classes_in[j] = this.alphabet.classesIn(trans.get(j).getLo(), trans.get(j).getHi());
+					count += classes_in[j].length;
+				}
+			}
+			this.symbols[i] = new int[count];
+			this.targets[i] = new int[count];
+			count = 0;
+			for(int j = 0; j < trans.size(); j++) {
+				if(classes_in[j] != null) {
+					for(int symbol : classes_in[j]) {
+						this.symbols[i][count] = symbol;
+						this.targets[i][count] = trans.get(j).getNext();
+						count++;
+					}
+				}
+			}
+			if(nfa.get(i).getEnd()) {
+				this.nfa_finals.set(i);
+			}
+		}
+		this.nfa_live = live_states(nfa, this.nfa_finals);
+		this.start_set = (BitSet)this.closures[nfa.getStart()].clone();
+		this.start_set.and(this.nfa_live);
+		//room for the start, the current state and one new state at least
+		this.capacity = Math.max(Options.LAZY_CACHE_SIZE, 3);
+		this.stats = new Regex_Stats();
+		this.stats.setNFA(nfa);
+		this.stats.setClasses(this.classes);
+	}
+	
+	/**
+	 * find the nfa states that can reach a final state
+	 * @param nfa nfa to search
+	 * @param finals final states of the nfa
+	 * @return set of live nfa states
+	 */
+	static BitSet live_states(NFA nfa, BitSet finals) {
+		//reverse edges (epsilon and lettered alike)
+		ArrayList<ArrayList<Integer>> in = new ArrayList<ArrayList<Integer>>();
+		for(int i = 0; i < nfa.size(); i++) {
+			in.add(new ArrayList<Integer>());
+		}
+		for(int i = 0; i < nfa.size(); i++) {
+			for(NFA.State.Transition trans : nfa.get(i).getTransitions()) {
+				in.get(trans.getNext()).add(i);
+			}
+		}
+		BitSet live = (BitSet)finals.clone();
+		ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+		for(int i = finals.nextSetBit(0); i >= 0; i = finals.nextSetBit(i+1)) {
+			work.push(i);
+		}
+		while(!work.isEmpty()) {
+			for(int prev : in.get(work.pop())) {
+				if(!live.get(prev)) {
+					live.set(prev);
+					work.push(prev);
+				}
+			}
+		}
+		return live;
+	}
+	
+	/**
+	 * accessor for the sizes and build times of this lazy dfa
+	 * @return stats of this lazy dfa
+	 */
+	@Override
+	public Regex_Stats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * make a new cursor with an empty state cache
+	 * @return new cursor over this lazy dfa
+	 */
+	@Override
+	public Cursor matcher() {
+		return new Cursor();
+	}
+	
+	/**
+	 * scan position in a lazy dfa along with the states it has built so far
+	 */
+	public class Cursor implements Regex_Matcher {
+		
+		//cached dfa states
+		private HashMap<BitSet, Integer> cache_index;
+		private ArrayList<BitSet> cache_sets;
+		private int[] table;
+		private boolean[] finals;
+		private boolean[] exhausted;
+		private int flushes;
+		private int start;
+		private int current;
+		
+		/**
+		 * setup cursor at the start state with only the start state built
+		 */
+		public Cursor() {
+			this.cache_index = new HashMap<BitSet, Integer>();
+			this.cache_sets = new ArrayList<BitSet>();
+			this.table = new int[0];
+			this.finals = new boolean[0];
+			this.exhausted = new boolean[0];
+			this.flushes = 0;
+			this.start = this.add(start_set);
+			this.current = this.start;
+		}
+		
+		/**
+		 * goto the next state via the given letter, building it if needed
+		 * @param letter value to transition on
+		 */
+		@Override
+		public void gotoNext(char letter) {
+			if(this.current != DFA.DEAD) {
+				int symbol = class_map[letter >>> 8][letter & 0xFF];
+				int next = this.table[this.current * classes + symbol];
+				if(next == UNKNOWN) {
+					next = this.build(this.current, symbol);
+				}
+				this.current = next;
+			}
+		}
+		
+		/**
+		 * run the whole longest-match loop from the start state over text[from, to),
+		 * building missing states as they are reached
+		 * @param text text to scan
+		 * @param from offset to start the match at
+		 * @param to offset to stop scanning at
+		 * @return offset just past the longest non-empty match, -1 if nothing matched
+		 */
+		@Override
+		public int longestMatchEnd(CharSequence text, int from, int to) {
+			int[] table = this.table;
+			boolean[] finals = this.finals;
+			int state = this.start;
+			int best = -1;
+			for(int i = from; i < to; i++) {
+				char letter = text.charAt(i);
+				int symbol = class_map[letter >>> 8][letter & 0xFF];
+				int next = table[state * classes + symbol];
+				if(next == UNKNOWN) {
+					next = this.build(state, symbol);
+					//building may grow or flush the cache
+					table = this.table;
+					finals = this.finals;
+				}
+				state = next;
+				if(state == DFA.DEAD) {
+					break;
+				}
+				if(finals[state]) {
+					best = i + 1;
+					//nothing longer can match
+					if(this.exhausted[state]) {
+						break;
+					}
+				}
+			}
+			this.current = this.start;
+			return best;
+		}
+		
+		/**
+		 * check if current state is a final state
+		 * @return true: this dfa is in an accept state, false: it is not
+		 */
+		@Override
+		public boolean atFinal() {
+			return this.current != DFA.DEAD && this.finals[this.current];
+		}
+		
+		/**
+		 * check if the dfa is dead
+		 * @return true: this dfa is in a dead state, false: it is not
+		 */
+		@Override
+		public boolean atDead() {
+			return this.current == DFA.DEAD;
+		}
+		
+		/**
+		 * check if stepping further could still reach an accept state
+		 * @return true: a longer match is possible, false: it is not
+		 */
+		@Override
+		public boolean canContinue() {
+			return this.current != DFA.DEAD && !this.exhausted[this.current];
+		}
+		
+		/**
+		 * resets this cursor's current state to the start
+		 */
+		@Override
+		public void reset() {
+			this.current = this.start;
+		}
+		
+		/**
+		 * accessor for the number of dfa states currently cached
+		 * @return number of cached states
+		 */
+		public int size() {
+			return this.cache_sets.size();
+		}
+		
+		/**
+		 * accessor for the number of times the cache was flushed
+		 * @return number of cache flushes
+		 */
+		public int getFlushes() {
+			return this.flushes;
+		}
+		
+		/**
+		 * build (and cache) the transition from the given state on the given char class
+		 * @param state cached state to transition from
+		 * @param symbol char class to transition on
+		 * @return the next state
+		 */
+		private int build(int state, int symbol) {
+			BitSet set = this.cache_sets.get(state);
+			BitSet move = new BitSet();
+			for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i+1)) {
+				for(int j = 0; j < symbols[i].length; j++) {
+					if(symbols[i][j] == symbol) {
+						move.or(closures[targets[i][j]]);
+					}
+				}
+			}
+			//states that can't reach a final state never matter
+			move.and(nfa_live);
+			int next;
+			if(move.isEmpty()) {
+				next = DFA.DEAD;
+			}
+			else {
+				Integer known = this.cache_index.get(move);
+				if(known != null) {
+					next = known;
+				}
+				else {
+					if(this.cache_sets.size() >= capacity) {
+						state = this.flush(state);
+					}
+					next = this.add(move);
+				}
+			}
+			this.table[state * classes + symbol] = next;
+			return next;
+		}
+		
+		/**
+		 * drop every cached state except the start and the given state
+		 * @param state cached state that must survive the flush
+		 * @return the new index of the surviving state
+		 */
+		private int flush(int state) {
+			BitSet keep = this.cache_sets.get(state);
+			this.cache_index.clear();
+			this.cache_sets.clear();
+			this.flushes++;
+			
+			if(Options.DEBUG) {
+				System.out.println("   [Lazy_DFA] state cache full, flushing...");
+			}
+			
+			this.start = this.add(start_set);
+			Integer kept = this.cache_index.get(keep);
+			if(kept == null) {
+				kept = this.add(keep);
+			}
+			return kept;
+		}
+		
+		/**
+		 * add a new state to the cache with no transitions built
+		 * @param set nfa states set the new state stands for
+		 * @return index of the new state
+		 */
+		private int add(BitSet set) {
+			int index = this.cache_sets.size();
+			//grow the table a row at a time (doubling)
+			if((index + 1) * classes > this.table.length) {
+				int rows = Math.min(Math.max(2 * (index + 1), 8), capacity);
+				this.table = Arrays.copyOf(this.table, rows * classes);
+				this.finals = Arrays.copyOf(this.finals, rows);
+				this.exhausted = Arrays.copyOf(this.exhausted, rows);
+			}
+			Arrays.fill(this.table, index * classes, (index + 1) * classes, UNKNOWN);
+			this.finals[index] = set.intersects(nfa_finals);
+			//every state in the set is live, so any lettered transition can lead to an accept
+			boolean out = false;
+			for(int i = set.nextSetBit(0); i >= 0 && !out; i = set.nextSetBit(i+1)) {
+				out = symbols[i].length > 0;
+			}
+			this.exhausted[index] = !out;
+			this.cache_sets.add(set);
+			this.cache_index.put(set, index);
+			return index;
+		}
+	}
+}
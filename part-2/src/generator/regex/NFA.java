@@ -1,6 +1,7 @@
 package generator.regex;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 
 /**
  * NFA.java
@@ -12,6 +13,12 @@ public class NFA {
 	
 	private ArrayList<State> states;
 	private int current, current_old;
+	//true: transitions are on case folded chars only (see Case_Fold)
+	private boolean ignore_case;
+	//copies a counted repetition of one char class made, as (state, next) pairs in order (see Glushkov_NFA)
+	private ArrayList<int[]> chains;
+	//number of capture groups in the regex (see Capture_DFA)
+	private int groups;
 	
 	/**
 	 * setup NFA with start state and empty current state
@@ -20,6 +27,9 @@ public class NFA {
 		this.states = new ArrayList<State>();
 		this.current = 0;
 		this.current_old = -1;
+		this.ignore_case = false;
+		this.chains = new ArrayList<int[]>();
+		this.groups = 0;
 		this.addState();
 		this.addState();
 		this.addTransition(current, current+1, EPSILON);
@@ -67,6 +77,30 @@ public class NFA {
 		return this.states;
 	}
 	
+	/**
+	 * accessor for the chains of copies counted repetitions of one char class made
+	 * @return (state, next) pairs of each chain's transitions, in order
+	 */
+	public ArrayList<int[]> getChains() {
+		return this.chains;
+	}
+	
+	/**
+	 * accessor for the number of capture groups
+	 * @return number of groups, numbered from 1 in the order they open
+	 */
+	public int getGroups() {
+		return this.groups;
+	}
+	
+	/**
+	 * mutator for the number of capture groups
+	 * @param groups number of groups the regex opens
+	 */
+	public void setGroups(int groups) {
+		this.groups = groups;
+	}
+	
 	/**
 	 * mutator for end value of any given state
 	 * @param index position of state to change
@@ -84,6 +118,183 @@ public class NFA {
 		return this.states.size();
 	}
 	
+	/**
+	 * compute the epsilon closure of every state in one pass
+	 * (tarjan's scc walk over epsilon transitions, so every closure is
+	 * built from already finished ones, states on an epsilon cycle share
+	 * one set - callers must not modify the returned sets)
+	 * @return epsilon closure for each state, indexed by state
+	 */
+	public BitSet[] getClosures() {
+		int n = this.size();
+		BitSet[] closures = new BitSet[n];
+		int[] index = new int[n];
+		int[] low = new int[n];
+		int[] next_edge = new int[n];
+		boolean[] on_stack = new boolean[n];
+		int[] stack = new int[n];
+		int[] calls = new int[n];
+		for(int i = 0; i < n; i++) {
+			index[i] = -1;
+		}
+		int counter = 0;
+		int top = 0;
+		for(int root = 0; root < n; root++) {
+			if(index[root] != -1) {
+				continue;
+			}
+			int depth = 0;
+			index[root] = low[root] = counter++;
+			stack[top++] = root;
+			on_stack[root] = true;
+			calls[depth++] = root;
+			while(depth > 0) {
+				int v = calls[depth-1];
+				ArrayList<State.Transition> trans = this.get(v).getTransitions();
+				if(next_edge[v] < trans.size()) {
+					State.Transition t = trans.get(next_edge[v]++);
+					if(t.getLetter() != EPSILON) {
+						continue;
+					}
+					int w = t.getNext();
+					if(index[w] == -1) {
+						//descend into w
+						index[w] = low[w] = counter++;
+						stack[top++] = w;
+						on_stack[w] = true;
+						calls[depth++] = w;
+					}
+					else if(on_stack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+				}
+				else {
+					//v is finished
+					depth--;
+					if(depth > 0) {
+						int u = calls[depth-1];
+						low[u] = Math.min(low[u], low[v]);
+					}
+					if(low[v] == index[v]) {
+						//pop v's component, successors outside it are already done
+						BitSet closure = new BitSet();
+						int bottom = top;
+						do {
+							bottom--;
+							closure.set(stack[bottom]);
+						} while(stack[bottom] != v);
+						for(int i = bottom; i < top; i++) {
+							ArrayList<State.Transition> member = this.get(stack[i]).getTransitions();
+							for(int j = 0; j < member.size(); j++) {
+								int w = member.get(j).getNext();
+								if(member.get(j).getLetter() == EPSILON && !closure.get(w)) {
+									closure.or(closures[w]);
+								}
+							}
+						}
+						for(int i = bottom; i < top; i++) {
+							closures[stack[i]] = closure;
+							on_stack[stack[i]] = false;
+						}
+						top = bottom;
+					}
+				}
+			}
+		}
+		return closures;
+	}
+	
+	/**
+	 * find the literal every accepted string starts with
+	 * (stops at the first point a match could end or two letters are possible)
+	 * @return the required prefix, empty if there is none
+	 */
+	public String getLiteralPrefix() {
+		//the text isn't folded, only its classes are
+		if(this.ignore_case) {
+			return "";
+		}
+		BitSet[] closures = this.getClosures();
+		BitSet set = closures[this.getStart()];
+		StringBuilder prefix = new StringBuilder();
+		//an nfa that loops on one letter without ever ending accepts nothing, so cap it
+		while(prefix.length() < 256) {
+			char letter = EPSILON;
+			BitSet next = new BitSet();
+			for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i+1)) {
+				//a match can end here
+				if(this.get(i).getEnd()) {
+					return prefix.toString();
+				}
+				ArrayList<State.Transition> trans = this.get(i).getTransitions();
+				for(int j = 0; j < trans.size(); j++) {
+					char curr = trans.get(j).getLetter();
+					if(curr == EPSILON) {
+						continue;
+					}
+					if(trans.get(j).getHi() != curr || (letter != EPSILON && curr != letter)) {
+						return prefix.toString();
+					}
+					letter = curr;
+					next.or(closures[trans.get(j).getNext()]);
+				}
+			}
+			if(letter == EPSILON) {
+				break;
+			}
+			prefix.append(letter);
+			set = next;
+		}
+		return prefix.toString();
+	}
+	
+	/**
+	 * build an nfa for the reversed language (every accepted string read backwards)
+	 * @return new nfa, this nfa's states are shifted up by 2
+	 */
+	public NFA reverse() {
+		NFA result = new NFA();
+		int c = 2;
+		for(int i = 0; i < this.size(); i++) {
+			result.addState();
+		}
+		for(int i = 0; i < this.size(); i++) {
+			ArrayList<State.Transition> trans = this.get(i).getTransitions();
+			for(int j = 0; j < trans.size(); j++) {
+				State.Transition temp = trans.get(j);
+				result.addTransition(temp.getNext()+c, i+c, temp.getLo(), temp.getHi());
+			}
+			//old end states are where the reversed nfa starts
+			if(this.get(i).getEnd()) {
+				result.addTransition(result.getCurrent(), i+c, EPSILON);
+			}
+		}
+		result.setEnd(this.getStart()+c, true);
+		result.ignore_case = this.ignore_case;
+		//chains run backwards too
+		for(int[] chain : this.chains) {
+			int[] reversed = new int[chain.length];
+			for(int i = 0; i < chain.length; i += 2) {
+				reversed[chain.length-2-i] = chain[i+1]+c;
+				reversed[chain.length-1-i] = chain[i]+c;
+			}
+			result.chains.add(reversed);
+		}
+		return result;
+	}
+	
+	/**
+	 * tag every end state with the given pattern id (for multi-pattern dfas)
+	 * @param tag pattern id the end states accept
+	 */
+	public void setTag(int tag) {
+		for(int i = 0; i < this.size(); i++) {
+			if(this.get(i).getEnd()) {
+				this.get(i).setTag(tag);
+			}
+		}
+	}
+	
 	/**
 	 * add a new state to the nfa
 	 * @return true: the state added successfully, false: it did not
@@ -103,11 +314,24 @@ public class NFA {
 		return this.states.get(start).addTransition(letter, next);
 	}
 	
+	/**
+	 * add new transition from given state to given state on a range of letters
+	 * @param start state the transition should go from
+	 * @param next state the transition should go to
+	 * @param lo lowest value to transition on
+	 * @param hi highest value to transition on
+	 * @return true: the transition added successfully, false: it did not
+	 */
+	public boolean addTransition(int start, int next, char lo, char hi) {
+		return this.states.get(start).addTransition(lo, hi, next);
+	}
+	
 	/**
 	 * concatenate a given nfa onto the end of this nfa
 	 * @param other nfa to concatenate with
 	 */
 	public void concatenate(NFA other) {
+		this.match_case(other);
 		other.finalize();
 		int c = this.size();
 		//copy all states from other
@@ -117,9 +341,11 @@ public class NFA {
 			ArrayList<State.Transition> trans = other.get(i).getTransitions();
 			for(int j = 0; j < trans.size(); j++) {
 				State.Transition temp = trans.get(j);
-				this.addTransition(this.size()-1, temp.getNext()+c, temp.getLetter());
+				this.addTransition(this.size()-1, temp.getNext()+c, temp.getLo(), temp.getHi());
 			}
+			this.get(this.size()-1).setCapture(other.get(i).getCapture());
 		}
+		this.add_chains(other.chains, c);
 		//add transition from end of this to beginning of current
 		this.addTransition(this.getCurrent(), c, EPSILON);
 		//move current index
@@ -142,6 +368,7 @@ public class NFA {
 	 */
 	public void merge(NFA other) {
 		
+		this.match_case(other);
 		other.finalize();
 		int c = this.size();
 		
@@ -156,11 +383,13 @@ public class NFA {
 			ArrayList<State.Transition> trans = other.get(i).getTransitions();
 			for(int j = 0; j < trans.size(); j++) {
 				State.Transition temp = trans.get(j);
-				this.addTransition(this.size()-1, temp.getNext()+c, temp.getLetter());
+				this.addTransition(this.size()-1, temp.getNext()+c, temp.getLo(), temp.getHi());
 			}
 			if(other.get(i).getEnd()) {
 				this.get(this.size()-1).setEnd(true);
 			}
+			this.get(this.size()-1).setTag(other.get(i).getTag());
+			this.get(this.size()-1).setCapture(other.get(i).getCapture());
 		}
 		//remove all end states
 		/*for(int i = 0; i < this.size(); i++) {
@@ -169,10 +398,95 @@ public class NFA {
 				temp.setEnd(false);
 			}
 		}*/
+		this.add_chains(other.chains, c);
 		//add transition from start of this to start of other
 		this.addTransition(this.getStart(), other.getStart()+c, EPSILON);
 	}
 	
+	/**
+	 * fold every transition to the representatives of its chars, so the
+	 * nfa matches regardless of case (Alphabet folds the input to match)
+	 */
+	public void foldCase() {
+		if(this.ignore_case) {
+			return;
+		}
+		for(int i = 0; i < this.size(); i++) {
+			this.rewrite(i, true);
+		}
+		this.ignore_case = true;
+	}
+	
+	/**
+	 * undo foldCase, every transition goes back to plain chars and holds
+	 * every case of the chars it held (for combining with a case sensitive nfa)
+	 */
+	public void unfoldCase() {
+		if(!this.ignore_case) {
+			return;
+		}
+		for(int i = 0; i < this.size(); i++) {
+			this.rewrite(i, false);
+		}
+		this.ignore_case = false;
+	}
+	
+	/**
+	 * accessor for the case folding flag
+	 * @return true: the nfa transitions on case folded chars, false: on plain chars
+	 */
+	public boolean isIgnoreCase() {
+		return this.ignore_case;
+	}
+	
+	/**
+	 * replace the lettered transitions of a state by their folded or unfolded ranges
+	 * @param index state to rewrite
+	 * @param fold true: fold the ranges (Case_Fold.fold), false: unfold them (Case_Fold.unfold)
+	 */
+	private void rewrite(int index, boolean fold) {
+		ArrayList<State.Transition> trans = this.get(index).getTransitions();
+		ArrayList<State.Transition> old = new ArrayList<State.Transition>(trans);
+		trans.clear();
+		for(State.Transition temp : old) {
+			if(temp.getLetter() == EPSILON) {
+				trans.add(temp);
+				continue;
+			}
+			Char_Ranges ranges = fold ? Case_Fold.fold(temp.getLo(), temp.getHi()) : Case_Fold.unfold(temp.getLo(), temp.getHi());
+			for(int j = 0; j < ranges.size(); j++) {
+				this.addTransition(index, temp.getNext(), ranges.getLo(j), ranges.getHi(j));
+			}
+		}
+	}
+	
+	/**
+	 * bring two nfas to the same case handling before combining them
+	 * (a folded and a plain nfa can't share an alphabet, so the folded one is unfolded)
+	 * @param other nfa about to be combined with this one
+	 */
+	private void match_case(NFA other) {
+		if(this.ignore_case != other.ignore_case) {
+			this.unfoldCase();
+			other.unfoldCase();
+		}
+	}
+	
+	/**
+	 * copy chains of copied states into this nfa
+	 * @param chains chains to copy
+	 * @param c number the copied states are shifted up by
+	 */
+	private void add_chains(ArrayList<int[]> chains, int c) {
+		for(int[] chain : chains) {
+			int[] shifted = new int[chain.length];
+			for(int i = 0; i < chain.length; i++) {
+				shifted[i] = chain[i]+c;
+			}
+			this.chains.add(shifted);
+		}
+	}
+	
 	/**
 	 * merge all end states and current state into one
 	 */
@@ -183,6 +497,10 @@ public class NFA {
 		for(int i = 0; i < this.size()-1; i++) {
 			State temp = this.get(i);
 			if(temp.getEnd()) {
+				//the global end accepts for the same pattern
+				if(temp.getTag() != -1) {
+					this.get(this.size()-1).setTag(temp.getTag());
+				}
 				//set end to false
 				temp.setEnd(false);
 				//add transition to new end
@@ -207,6 +525,9 @@ public class NFA {
 				if(trans.get(j).getLetter() == '\u0000') {
 					result += "EPS, ";
 				}
+				else if(trans.get(j).getHi() != trans.get(j).getLo()) {
+					result += "\'" + trans.get(j).getLo() + "\'-\'" + trans.get(j).getHi() + "\', ";
+				}
 				else {
 					result += "\'" + trans.get(j).getLetter() + "\', ";
 				}
@@ -242,16 +563,65 @@ public class NFA {
 	 * @param letters list of value to concatenate
 	 */
 	public void addConcatenation(ArrayList<Character> letters) {
-		this.addState();
-		//current ---(letters)---> new
+		Char_Ranges ranges = new Char_Ranges();
 		for(int i = 0; i < letters.size(); i++) {
-			this.addTransition(this.current, this.size()-1, letters.get(i));
+			ranges.add(letters.get(i));
+		}
+		this.addConcatenation(ranges);
+	}
+	
+	/**
+	 * add concatenation from current to next on a set of letter ranges
+	 * (one transition per range, however many letters it holds)
+	 * @param ranges ranges of values to concatenate
+	 */
+	public void addConcatenation(Char_Ranges ranges) {
+		this.addState();
+		//current ---(ranges)---> new
+		for(int i = 0; i < ranges.size(); i++) {
+			this.addTransition(this.current, this.size()-1, ranges.getLo(i), ranges.getHi(i));
 		}
 		//current = new
 		this.current_old = this.current;
 		this.current = this.size()-1;
 	}
 	
+	/**
+	 * add concatenation from current to a whole automaton, given as a dfa table
+	 * whose columns stand for ranges of letters (see DFA_Product)
+	 * @param table transition table, row per state, column per class (DFA.DEAD: no transition)
+	 * @param finals final flag for each state
+	 * @param classes ranges of values each column transitions on
+	 */
+	public void addAutomaton(int[] table, boolean[] finals, Char_Ranges[] classes) {
+		int base = this.size();
+		for(int i = 0; i < finals.length; i++) {
+			this.addState();
+		}
+		//one state past the automaton, every final state leads to it
+		this.addState();
+		int end = this.size()-1;
+		//current ---(EPS)---> automaton start
+		this.addTransition(this.current, base, EPSILON);
+		for(int i = 0; i < finals.length; i++) {
+			for(int j = 0; j < classes.length; j++) {
+				int next = table[i * classes.length + j];
+				if(next == DFA.DEAD) {
+					continue;
+				}
+				for(int k = 0; k < classes[j].size(); k++) {
+					this.addTransition(base+i, base+next, classes[j].getLo(k), classes[j].getHi(k));
+				}
+			}
+			if(finals[i]) {
+				this.addTransition(base+i, end, EPSILON);
+			}
+		}
+		//current = new
+		this.current_old = this.current;
+		this.current = end;
+	}
+	
 	/**
 	 * add union from beginning to new state
 	 */
@@ -322,6 +692,162 @@ public class NFA {
 		this.current = this.size()-1;
 	}
 	
+	/**
+	 * add counted repitition (min to max times) from current, every copy of
+	 * the last letter or range is one state further down a chain
+	 * @param min least number of times
+	 * @param max most number of times, -1 for no limit
+	 */
+	public void addRepetitionCounted(int min, int max) {
+		//the transitions current_old ---(ranges)---> current are the repeated part
+		ArrayList<State.Transition> repeated = new ArrayList<State.Transition>();
+		for(State.Transition trans : this.get(this.current_old).getTransitions()) {
+			if(trans.getLetter() != EPSILON && trans.getNext() == this.current) {
+				repeated.add(trans);
+			}
+		}
+		int count = max == -1 ? Math.max(min, 1) : max;
+		//{0} keeps the first copy, unreachable from the end
+		int[] chain = new int[Math.max(count, 1)+1];
+		chain[0] = this.current_old;
+		chain[1] = this.current;
+		for(int i = 2; i <= count; i++) {
+			this.addState();
+			chain[i] = this.size()-1;
+			//chain[i-1] ---(ranges)---> chain[i]
+			for(State.Transition trans : repeated) {
+				this.addTransition(chain[i-1], chain[i], trans.getLo(), trans.getHi());
+			}
+		}
+		if(max == -1) {
+			//chain[count] ---(ranges)---> chain[count]
+			for(State.Transition trans : repeated) {
+				this.addTransition(chain[count], chain[count], trans.getLo(), trans.getHi());
+			}
+		}
+		this.addState();
+		//chain[i] ---(EPS)---> new, once at least min copies are passed
+		for(int i = min; i <= count; i++) {
+			this.addTransition(chain[i], this.size()-1, EPSILON);
+		}
+		if(count >= 2) {
+			int[] pairs = new int[2*count];
+			for(int i = 0; i < count; i++) {
+				pairs[2*i] = chain[i];
+				pairs[2*i+1] = chain[i+1];
+			}
+			this.chains.add(pairs);
+		}
+		//current = new
+		this.current_old = chain[count];
+		this.current = this.size()-1;
+	}
+	
+	/**
+	 * add counted repitition (min to max times) on whole nfa, the nfa is
+	 * copied once for every time past the first
+	 * @param min least number of times
+	 * @param max most number of times, -1 for no limit
+	 */
+	public void addRepetitionCountedGlobal(int min, int max) {
+		int n = this.size();
+		int end = this.current;
+		//the copies repeat the nfa, not its end
+		this.setEnd(end, false);
+		ArrayList<ArrayList<State.Transition>> block = new ArrayList<ArrayList<State.Transition>>();
+		//the nfa's only (state, next) pair with letters, null if none, {-1, -1} if more than one
+		int[] position = null;
+		for(int i = 0; i < n; i++) {
+			block.add(new ArrayList<State.Transition>(this.get(i).getTransitions()));
+			for(State.Transition trans : block.get(i)) {
+				if(trans.getLetter() == EPSILON) {
+					continue;
+				}
+				if(position == null || (position[0] == i && position[1] == trans.getNext())) {
+					position = new int[] {i, trans.getNext()};
+				}
+				else {
+					position = new int[] {-1, -1};
+				}
+			}
+		}
+		ArrayList<int[]> inner = new ArrayList<int[]>(this.chains);
+		int count = max == -1 ? Math.max(min, 1) : max;
+		int[] starts = new int[Math.max(count, 1)+1];
+		starts[1] = this.getStart();
+		for(int i = 2; i <= count; i++) {
+			int c = this.size();
+			starts[i] = c;
+			//copy all states
+			for(int j = 0; j < n; j++) {
+				this.addState();
+				for(State.Transition temp : block.get(j)) {
+					this.addTransition(c+j, temp.getNext()+c, temp.getLo(), temp.getHi());
+				}
+				//every copy of a group captures into the same group
+				this.get(c+j).setCapture(this.get(j).getCapture());
+			}
+			this.add_chains(inner, c);
+			//end of copy i-1 ---(EPS)---> copy i
+			this.addTransition(starts[i-1]+end, c, EPSILON);
+		}
+		if(max == -1) {
+			//end of the last copy ---(EPS)---> its start
+			this.addTransition(starts[count]+end, starts[count], EPSILON);
+		}
+		this.addState();
+		if(min == 0) {
+			//start ---(EPS)---> new
+			this.addTransition(this.getStart(), this.size()-1, EPSILON);
+		}
+		//end of copy i ---(EPS)---> new, once at least min copies are passed
+		for(int i = Math.max(min, 1); i <= count; i++) {
+			this.addTransition(starts[i]+end, this.size()-1, EPSILON);
+		}
+		//the copies of a single letter or range make a chain
+		if(count >= 2 && position != null && position[0] != -1) {
+			int[] pairs = new int[2*count];
+			for(int i = 0; i < count; i++) {
+				pairs[2*i] = position[0]+starts[i+1];
+				pairs[2*i+1] = position[1]+starts[i+1];
+			}
+			this.chains.add(pairs);
+		}
+		//current = new
+		this.current_old = this.getStart();
+		this.current = this.size()-1;
+	}
+	
+	/**
+	 * make the whole nfa a capture group: a new open state takes over the
+	 * start's transitions and a new close state follows the end, so the
+	 * group's submatch runs from where the open state is passed to where
+	 * the close state is (repeating the nfa loops back to the start, which
+	 * passes neither)
+	 * @param group number of the group
+	 */
+	public void addCapture(int group) {
+		this.finalize();
+		this.addState();
+		int open = this.size()-1;
+		State start = this.get(this.getStart());
+		this.get(open).getTransitions().addAll(start.getTransitions());
+		start.getTransitions().clear();
+		this.get(open).setCapture(2 * (group-1));
+		//start ---(EPS)---> open
+		this.addTransition(this.getStart(), open, EPSILON);
+		this.addState();
+		int close = this.size()-1;
+		this.get(close).setCapture(2 * (group-1) + 1);
+		//current ---(EPS)---> close
+		this.addTransition(this.current, close, EPSILON);
+		this.setEnd(this.current, false);
+		this.setEnd(close, true);
+		//current = close
+		this.current_old = this.current;
+		this.current = close;
+	}
+	
 	/*==========================================================================
 	 * END regex operations
 	 =========================================================================*/
@@ -333,6 +859,10 @@ public class NFA {
 		
 		private ArrayList<Transition> transitions;
 		private boolean end;
+		//pattern id of an end state in a multi-pattern nfa (-1: untagged)
+		private int tag;
+		//capture tag written when passing this state, 2 per group: open, close (-1: none)
+		private int capture;
 		
 		/**
 		 * setup state with empty list of transitions
@@ -340,6 +870,8 @@ public class NFA {
 		public State() {
 			this.transitions = new ArrayList<Transition>();
 			end = false;
+			this.tag = -1;
+			this.capture = -1;
 		}
 		
 		/**
@@ -358,6 +890,38 @@ public class NFA {
 			this.end = end;
 		}
 		
+		/**
+		 * accessor for the pattern id of this state
+		 * @return pattern id, -1 if untagged
+		 */
+		public int getTag() {
+			return this.tag;
+		}
+		
+		/**
+		 * mutator for the pattern id of this state
+		 * @param tag new pattern id, -1 for untagged
+		 */
+		public void setTag(int tag) {
+			this.tag = tag;
+		}
+		
+		/**
+		 * accessor for the capture tag of this state
+		 * @return tag written when passing this state, -1 if none
+		 */
+		public int getCapture() {
+			return this.capture;
+		}
+		
+		/**
+		 * mutator for the capture tag of this state
+		 * @param capture tag written when passing this state, -1 for none
+		 */
+		public void setCapture(int capture) {
+			this.capture = capture;
+		}
+		
 		/**
 		 * add new transition to this state
 		 * @param letter value to transition on
@@ -368,6 +932,17 @@ public class NFA {
 			return this.transitions.add(new Transition(letter, next_index));
 		}
 		
+		/**
+		 * add new transition on a range of letters to this state
+		 * @param lo lowest value to transition on
+		 * @param hi highest value to transition on
+		 * @param next_index index of state to transition to
+		 * @return true: the transition added successfully, false: it did not
+		 */
+		public boolean addTransition(char lo, char hi, int next_index) {
+			return this.transitions.add(new Transition(lo, hi, next_index));
+		}
+		
 		/**
 		 * return all transitions in this state
 		 * @return array containing all transitions in this state
@@ -379,12 +954,12 @@ public class NFA {
 		/**
 		 * return all transitions for this state for the given letter
 		 * @param letter value transitions transition on
-		 * @return array containing all transitions in this state with given letter
+		 * @return array containing all transitions in this state whose range holds the given letter
 		 */
 		public ArrayList<Transition> getTransitions(char letter) {
 			ArrayList<Transition> result = new ArrayList<Transition>();
 			for(int i = 0; i < this.transitions.size(); i++) {
-				if(this.transitions.get(i).getLetter() == letter) {
+				if(this.transitions.get(i).contains(letter)) {
 					result.add(this.transitions.get(i));
 				}
 			}
@@ -392,11 +967,12 @@ public class NFA {
 		}
 		
 		/**
-		 * NFA transition
+		 * NFA transition on a range of letters [lo, hi] (lo == hi for a single letter)
 		 */
 		public class Transition {
 			
-			private char letter;
+			private char lo;
+			private char hi;
 			private int next_index;
 			
 			/**
@@ -405,16 +981,52 @@ public class NFA {
 			 * @param next_index index of state to transition to
 			 */
 			public Transition(char letter, int next_index) {
-				this.letter = letter;
+				this(letter, letter, next_index);
+			}
+			
+			/**
+			 * setup transition on given range of letters and index to next state
+			 * @param lo lowest value to transition on
+			 * @param hi highest value to transition on
+			 * @param next_index index of state to transition to
+			 */
+			public Transition(char lo, char hi, int next_index) {
+				this.lo = lo;
+				this.hi = hi;
 				this.next_index = next_index;
 			}
 			
 			/**
 			 * accessor for value this transition applies to
-			 * @return value to transition on
+			 * @return value to transition on (lowest value of a range)
 			 */
 			public char getLetter() {
-				return this.letter;
+				return this.lo;
+			}
+			
+			/**
+			 * accessor for lowest value this transition applies to
+			 * @return lowest value to transition on
+			 */
+			public char getLo() {
+				return this.lo;
+			}
+			
+			/**
+			 * accessor for highest value this transition applies to
+			 * @return highest value to transition on
+			 */
+			public char getHi() {
+				return this.hi;
+			}
+			
+			/**
+			 * check if this transition applies to the given letter
+			 * @param letter value to check
+			 * @return true: letter is in [lo, hi], false: it is not
+			 */
+			public boolean contains(char letter) {
+				return this.lo <= letter && letter <= this.hi;
 			}
 			
 			/**
@@ -430,7 +1042,8 @@ public class NFA {
 			 * @param letter value to transition on
 			 */
 			public void setLetter(char letter) {
-				this.letter = letter;
+				this.lo = letter;
+				this.hi = letter;
 			}
 			
 			/**
@@ -1,6 +1,8 @@
 package generator.regex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Stack;
 import java.text.ParseException;
 
@@ -15,7 +17,7 @@ import global.Token;
  */
 
 public class RecursiveDescent {
-
+	
 	private Stack<NFA> stack;
 	//already defined identifiers
 	private ArrayList<NFA_Identifier> defined;
@@ -25,6 +27,21 @@ public class RecursiveDescent {
 	private boolean scope_back;
 	///flag to differentiate char classes
 	private boolean char_class;
+	//regex uses & (operands of | are built on their own so they can be intersected)
+	private boolean intersects;
+	//match regardless of case (compile flag or a leading (?i))
+	private boolean ignore_case;
+	//number of capture groups opened so far
+	private int groups;
+	//wrap groups in capture states (only a tagged dfa reads them)
+	private boolean captures;
+	
+	//inline flag a case-insensitive regex starts with
+	public static final String IGNORE_CASE_FLAG = "(?i)";
+	//most times a counted repetition may repeat (every time is a copy in the nfa)
+	public static final int MAX_REPEAT = 1000;
+	//most nfa states counted repetitions may expand a regex to (nested counts multiply)
+	public static final int MAX_STATES = 100000;
 	
 	/**
 	 * setup parser with given input stream and defined identifiers
@@ -32,11 +49,40 @@ public class RecursiveDescent {
 	 * @param defined list of defined identifiers (char classes and regular expressions)
 	 */
 	public RecursiveDescent(String regex, ArrayList<NFA_Identifier> defined) {
+		this(regex, defined, false);
+	}
+	
+	/**
+	 * setup parser with given input stream, defined identifiers and case handling
+	 * @param lexer input stream to use
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @param ignore_case true: match regardless of case, false: only if the regex starts with (?i)
+	 */
+	public RecursiveDescent(String regex, ArrayList<NFA_Identifier> defined, boolean ignore_case) {
+		this(regex, defined, ignore_case, false);
+	}
+	
+	/**
+	 * setup parser with given input stream, defined identifiers, case handling and capture groups
+	 * @param lexer input stream to use
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @param ignore_case true: match regardless of case, false: only if the regex starts with (?i)
+	 * @param captures true: groups get capture states (for Capture_DFA), false: groups only group
+	 */
+	public RecursiveDescent(String regex, ArrayList<NFA_Identifier> defined, boolean ignore_case, boolean captures) {
+		if(regex.startsWith(IGNORE_CASE_FLAG)) {
+			regex = regex.substring(IGNORE_CASE_FLAG.length());
+			ignore_case = true;
+		}
 		this.lexer = new Regex_Lexer(regex);
 		this.defined = defined;
 		this.stack = new Stack<NFA>();
 		this.scope_back = false;
 		this.char_class = true;
+		this.intersects = has_token(regex, Regex_TokenType.INTERSECT);
+		this.ignore_case = ignore_case;
+		this.groups = 0;
+		this.captures = captures;
 	}
 	
 	/**
@@ -49,6 +95,10 @@ public class RecursiveDescent {
 		regEx();
 		NFA new_nfa = stack.pop();
 		new_nfa.finalize();
+		new_nfa.setGroups(groups);
+		if(ignore_case) {
+			new_nfa.foldCase();
+		}
 		NFA_Identifier result = new NFA_Identifier(null, new_nfa, char_class);
 		return result;
 	}
@@ -62,14 +112,76 @@ public class RecursiveDescent {
 	}
 	
 	/**
-	 * <rexp> -> <rexp1> <rexp$>
-	 * @throws ParseException thrown by rexp1 function
+	 * <rexp> -> <rexpAnd> <rexp$>
+	 * @throws ParseException thrown by rexpAnd function
 	 */
 	private void rexp() throws ParseException {
-		rexp1();
+		rexpAnd();
 		rexp$();
 	}
 	
+	/**
+	 * <rexpAnd> -> <rexp1> <rexpAnd$>
+	 * @throws ParseException thrown by rexp1 function
+	 */
+	private void rexpAnd() throws ParseException {
+		if(!intersects) {
+			rexp1();
+			return;
+		}
+		//build the operand on its own
+		stack.push(new NFA());
+		rexp1();
+		rexpAnd$();
+		//scope back in
+		NFA t2 = stack.pop();
+		NFA t1 = stack.pop();
+		t1.concatenate(t2);
+		stack.push(t1);
+	}
+	
+	/**
+	 * <rexpAnd$> -> INTERSECT <rexp1> <rexpAnd$>  |  E
+	 * @throws ParseException thrown by rexp1 function
+	 * @throws Regex_Limit_Exception thrown if the product goes over the state budget
+	 */
+	private void rexpAnd$() throws ParseException {
+		Regex_TokenType type = lexer.peekNextToken().getType();
+		if(type == Regex_TokenType.INTERSECT) {
+			
+			if(Options.DEBUG) {
+				System.out.println("   [RDescent] INTERSECT found... not in char class");
+			}
+			
+			char_class = false;
+			lexer.getNextToken();//consume INTERSECT
+			
+			stack.push(new NFA());
+			rexp1();
+			NFA t2 = stack.pop();
+			NFA t1 = stack.pop();
+			
+			if(Options.DEBUG) {
+				System.out.println("   [RDescent] adding intersection...");
+			}
+			
+			NFA product = new NFA();
+			try {
+				DFA_Product result = DFA_Product.intersect(to_dfa(t1), to_dfa(t2));
+				product.addAutomaton(result.getTable(), result.getFinals(), result.getClasses());
+			}
+			catch(DFA_Budget_Exception dbe) {
+				throw new Regex_Limit_Exception("Regex ERROR: intersection exceeds " + dbe.getBudget() + " dfa states" +
+						", position: " + this.lexer.getPosition(), this.lexer.getPosition());
+			}
+			stack.push(product);
+			
+			rexpAnd$();
+		}
+		else
+			return;
+	}
+	
 	/**
 	 * <rexp1> -> <rexp2> <rexp1$>
 	 * @throws ParseException thrown by rexp2 function
@@ -103,7 +215,7 @@ public class RecursiveDescent {
 			t2.addAlternation();
 			stack.push(t2);
 			
-			rexp1();
+			rexpAnd();
 			rexp$();
 		}
 		else
@@ -117,7 +229,8 @@ public class RecursiveDescent {
 	private void rexp1$() throws ParseException {
 		Regex_TokenType type = lexer.peekNextToken().getType();
 		if(type == Regex_TokenType.LPAREN || type == Regex_TokenType.DOT ||
-				type == Regex_TokenType.LBRACKET || type == Regex_TokenType.DEFINED) {
+				type == Regex_TokenType.LBRACKET || type == Regex_TokenType.DEFINED ||
+				type == Regex_TokenType.COMPLEMENT) {
 			rexp2();
 			rexp1$();
 		}
@@ -136,8 +249,9 @@ public class RecursiveDescent {
 	}
 	
 	/**
-	 * <rexp2> -> (<rexp>) <rexp2Tail>  | RE_CHAR <rexp2Tail> | <rexp3>
+	 * <rexp2> -> (<rexp>) <rexp2Tail>  | RE_CHAR <rexp2Tail> | COMPLEMENT <rexp2> | <rexp3>
 	 * @throws ParseException if an literal is not a valid RE_CHAR
+	 * @throws Regex_Limit_Exception thrown if the complement goes over the state budget
 	 */
 	private void rexp2() throws ParseException {
 		Regex_TokenType type = lexer.peekNextToken().getType();
@@ -151,8 +265,13 @@ public class RecursiveDescent {
 			char_class = false;
 			stack.push(new NFA());
 			lexer.getNextToken();//consume LPAREN
+			//groups are numbered in the order they open
+			int group = ++groups;
 			rexp();
 			lexer.getNextToken();//consume RPAREN
+			if(captures) {
+				stack.peek().addCapture(group);
+			}
 			
 			if(Options.DEBUG) {
 				System.out.println("   [RDescent] Scoping in...");
@@ -161,6 +280,35 @@ public class RecursiveDescent {
 			scope_back = true;
 			rexp2Tail();
 		}
+		else if(type == Regex_TokenType.COMPLEMENT) {
+			
+			if(Options.DEBUG) {
+				System.out.println("   [RDescent] COMPLEMENT found... not in char class");
+			}
+			
+			char_class = false;
+			lexer.getNextToken();//consume COMPLEMENT
+			
+			//build the operand on its own
+			stack.push(new NFA());
+			rexp2();
+			NFA operand = stack.pop();
+			NFA t2 = stack.pop();
+			
+			if(Options.DEBUG) {
+				System.out.println("   [RDescent] adding complement...");
+			}
+			
+			try {
+				DFA_Product result = DFA_Product.complement(to_dfa(operand));
+				t2.addAutomaton(result.getTable(), result.getFinals(), result.getClasses());
+			}
+			catch(DFA_Budget_Exception dbe) {
+				throw new Regex_Limit_Exception("Regex ERROR: complement exceeds " + dbe.getBudget() + " dfa states" +
+						", position: " + this.lexer.getPosition(), this.lexer.getPosition());
+			}
+			stack.push(t2);
+		}
 		else if(type == Regex_TokenType.LITERAL) {
 			
 			if(Options.DEBUG) {
@@ -199,8 +347,10 @@ public class RecursiveDescent {
 	}
 	
 	/**
-	 * <rexp2Tail> -> * | + |  E
+	 * <rexp2Tail> -> * | + | { <count> } |  E
 	 * @throws ParseException thrown by lexer
+	 * @throws ParseException thrown by count function
+	 * @throws Regex_Limit_Exception thrown if a count expands the nfa over MAX_STATES states
 	 */
 	private void rexp2Tail() throws ParseException {
 		Regex_TokenType type = lexer.peekNextToken().getType();
@@ -274,6 +424,46 @@ public class RecursiveDescent {
 				stack.push(t2);
 			}
 		}
+		else if(type == Regex_TokenType.LBRACE){
+			
+			if(Options.DEBUG) {
+				System.out.println("   [RDescent] LBRACE found... not in char class");
+			}
+			
+			char_class = false;
+			lexer.getNextToken();//consume LBRACE
+			int[] bounds = count();//consumes RBRACE
+			if(scope_back) {
+				scope_back = false;
+				NFA t2 = stack.pop();
+				t2.finalize();
+				//every copy repeats the whole group, which joins the sequence it is in
+				check_states(stack.peek().size() + (long)t2.size() * copies(bounds));
+				
+				if(Options.DEBUG) {
+					System.out.println("   [RDescent] adding repitition {" + bounds[0] + "," + bounds[1] + "} global...");
+				}
+				
+				t2.addRepetitionCountedGlobal(bounds[0], bounds[1]);
+				//scope in
+				NFA t1 = stack.pop();
+				t1.concatenate(t2);
+				stack.push(t1);
+			}
+			else {
+				NFA t2 = stack.pop();
+				//every copy is one more state
+				check_states((long)t2.size() + copies(bounds));
+				
+				if(Options.DEBUG) {
+					System.out.println("   [RDescent] adding repitition {" + bounds[0] + "," + bounds[1] + "}...");
+				}
+				
+				t2.addRepetitionCounted(bounds[0], bounds[1]);
+				//put back onto stack
+				stack.push(t2);
+			}
+		}
 		else {
 			if(scope_back) {
 				scope_back = false;
@@ -288,6 +478,88 @@ public class RecursiveDescent {
 		}
 	}
 	
+	/**
+	 * <count> -> <number> } | <number> , } | <number> , <number> }
+	 * @return least and most times to repeat (-1: no limit)
+	 * @throws ParseException thrown if the count isn't closed by }
+	 * @throws ParseException thrown if the least times are more than the most
+	 * @throws ParseException thrown by number function
+	 */
+	private int[] count() throws ParseException {
+		int min = number();
+		int max = min;
+		Token<Regex_TokenType> next = lexer.peekNextToken();
+		if(next.getType() == Regex_TokenType.LITERAL && next.getValue().equals(",")) {
+			lexer.getNextToken();//consume ,
+			max = lexer.peekNextToken().getType() == Regex_TokenType.RBRACE ? -1 : number();
+		}
+		next = lexer.getNextToken();//consume RBRACE
+		if(next.getType() != Regex_TokenType.RBRACE) {
+			throw new ParseException("Regex ERROR: expected } found: " + next.getValue() +
+					", position: " + this.lexer.getPosition(), this.lexer.getPosition());
+		}
+		if(max != -1 && min > max) {
+			throw new ParseException("Regex ERROR: repetition {" + min + "," + max + "} repeats at least more than at most" +
+					", position: " + this.lexer.getPosition(), this.lexer.getPosition());
+		}
+		return new int[] {min, max};
+	}
+	
+	/**
+	 * get the number of copies a counted repetition makes
+	 * @param bounds least and most times to repeat (-1: no limit)
+	 * @return copies in the nfa
+	 */
+	private static int copies(int[] bounds) {
+		return bounds[1] == -1 ? Math.max(bounds[0], 1) : Math.max(bounds[1], 1);
+	}
+	
+	/**
+	 * make sure a counted repetition doesn't expand the nfa over MAX_STATES states,
+	 * checked before the copies are made
+	 * @param states states the repeated nfa would have
+	 * @throws Regex_Limit_Exception thrown if it is over MAX_STATES
+	 */
+	private void check_states(long states) throws Regex_Limit_Exception {
+		if(states > MAX_STATES) {
+			throw new Regex_Limit_Exception("Regex ERROR: repetition expands to over " + MAX_STATES + " nfa states" +
+					", position: " + this.lexer.getPosition(), this.lexer.getPosition());
+		}
+	}
+	
+	/**
+	 * <number> -> DIGIT <number> | DIGIT
+	 * @return value of the digits
+	 * @throws ParseException thrown if there is no digit
+	 * @throws ParseException thrown if the number is more than MAX_REPEAT
+	 */
+	private int number() throws ParseException {
+		Token<Regex_TokenType> next = lexer.peekNextToken();
+		if(!is_digit(next)) {
+			throw new ParseException("Regex ERROR: expected repetition count found: " + next.getValue() +
+					", position: " + this.lexer.getPosition(), this.lexer.getPosition());
+		}
+		int value = 0;
+		while(is_digit(lexer.peekNextToken())) {
+			value = value * 10 + (lexer.getNextToken().getValue().charAt(0) - '0');//consume DIGIT
+			if(value > MAX_REPEAT) {
+				throw new ParseException("Regex ERROR: repetition count over " + MAX_REPEAT +
+						", position: " + this.lexer.getPosition(), this.lexer.getPosition());
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * check if a token is a single digit
+	 * @param token token to check
+	 * @return true: the token is a digit, false: it isn't
+	 */
+	private static boolean is_digit(Token<Regex_TokenType> token) {
+		return token.getType() == Regex_TokenType.LITERAL && token.getValue().length() == 1 &&
+				token.getValue().charAt(0) >= '0' && token.getValue().charAt(0) <= '9';
+	}
+	
 	/**
 	 * <rexp3> -> <charClass>  |  E 
 	 * @throws ParseException thrown by charClass function
@@ -302,8 +574,10 @@ public class RecursiveDescent {
 	}
 	
 	/**
-	 * <charClass> ->  .  |  [ <charClass1>  | <definedClass>
+	 * <charClass> ->  . <classTail>  |  [ <charClass1> <classTail>  | <definedClass>
+	 * <classTail> -> { <count> } | E
 	 * @throws ParseException thrown by definedClass function
+	 * @throws ParseException thrown by rexp2Tail function
 	 */
 	private void charClass() throws ParseException{
 		Regex_TokenType type = lexer.peekNextToken().getType();
@@ -312,17 +586,15 @@ public class RecursiveDescent {
 			lexer.getNextToken();//consume DOT
 			
 			NFA t2 = stack.pop();
-			//make list from dot_char (bad...)
-			ArrayList<Character> dot_char = new ArrayList<Character>();
-			for(int i = 0; i < DOT_CHAR.length; i++) {
-				dot_char.add(DOT_CHAR[i]);
-			}
-			t2.addConcatenation(dot_char);
+			//any char, one range transition
+			t2.addConcatenation(Char_Ranges.all());
 			stack.push(t2);
+			class_tail();
 		}
 		else if(type == Regex_TokenType.LBRACKET){
 			lexer.getNextToken();//consume LBRACKET
 			charClass1();
+			class_tail();
 		}
 		else  {
 			Token<Regex_TokenType> defined = lexer.getNextToken();
@@ -330,6 +602,16 @@ public class RecursiveDescent {
 		}
 	}
 	
+	/**
+	 * a class may be followed by a counted repetition (not by * or +)
+	 * @throws ParseException thrown by rexp2Tail function
+	 */
+	private void class_tail() throws ParseException {
+		if(lexer.peekNextToken().getType() == Regex_TokenType.LBRACE) {
+			rexp2Tail();
+		}
+	}
+	
 	/**
 	 * <charClass1> ->  <charSetList> | <excludeSet>
 	 * @throws ParseException thrown by excludeSet function
@@ -337,19 +619,17 @@ public class RecursiveDescent {
 	 */
 	private void charClass1() throws ParseException {
 		Regex_TokenType type = lexer.peekNextToken().getType();
-		ArrayList<Character> range;
+		Char_Ranges range;
 		if(type == Regex_TokenType.CARET){
-			range = excludeSet(new ArrayList<Character>());
+			range = excludeSet(new Char_Ranges());
 		}
 		
 		else{
-			range = charSetList(new ArrayList<Character>());
+			range = charSetList(new Char_Ranges());
 		}
 		
 		if(Options.DEBUG) {
-			for(int i = 0; i < range.size(); i++) {
-				System.out.println("   [RDescent] adding to range: " + range.get(i));
-			}
+			System.out.println("   [RDescent] adding to range: " + range);
 		}
 		
 		//add range to nfa
@@ -370,9 +650,12 @@ public class RecursiveDescent {
 	 * @return the range to include
 	 * @throws ParseException thrown by charSet function
 	 */
-	private ArrayList<Character> charSetList(ArrayList<Character> range) throws ParseException{
+	private Char_Ranges charSetList(Char_Ranges range) throws ParseException{
 		Regex_TokenType type = lexer.peekNextToken().getType();
-		if(type == Regex_TokenType.LITERAL || type == Regex_TokenType.DOT){
+		//&, ~, { and } are plain chars in a class
+		if(type == Regex_TokenType.LITERAL || type == Regex_TokenType.DOT ||
+				type == Regex_TokenType.INTERSECT || type == Regex_TokenType.COMPLEMENT ||
+				type == Regex_TokenType.LBRACE || type == Regex_TokenType.RBRACE){
 			//make sure the literal is a CLS_CHAR
 			boolean valid = check_valid(lexer.peekNextToken(), CLS_CHAR);
 			//TODO
@@ -394,7 +677,7 @@ public class RecursiveDescent {
 	 * @return the range to include
 	 * @throws ParseException if range value isn't in CLS_CHAR
 	 */
-	private ArrayList<Character> charSet(ArrayList<Character> range) throws ParseException {
+	private Char_Ranges charSet(Char_Ranges range) throws ParseException {
 		Token<Regex_TokenType> start = lexer.getNextToken();//consume LITERAL
 		
 		if(!check_valid(start, CLS_CHAR)) {
@@ -412,7 +695,7 @@ public class RecursiveDescent {
 	 * @return the range to include
 	 * @throws ParseException if range value isn't in CLS_CHAR
 	 */
-	private ArrayList<Character> charSetTail(Token<Regex_TokenType> start, ArrayList<Character> range) throws ParseException {
+	private Char_Ranges charSetTail(Token<Regex_TokenType> start, Char_Ranges range) throws ParseException {
 		Regex_TokenType type = lexer.peekNextToken().getType();
 		if(type == Regex_TokenType.DASH){
 			lexer.getNextToken();//consume DASH
@@ -423,25 +706,21 @@ public class RecursiveDescent {
 						", position: " + this.lexer.getPosition(), this.lexer.getPosition());
 			}
 			//make set from range
-			int start_index;
-			int end_index;
+			char lo;
+			char hi;
 			if(start.getValue().charAt(0) == '\\') {
-				start_index = ((int)start.getValue().charAt(1)) - 32;
+				lo = start.getValue().charAt(1);
 			}
 			else {
-				start_index = ((int)start.getValue().charAt(0)) - 32;
+				lo = start.getValue().charAt(0);
 			}
 			if(end.getValue().charAt(0) == '\\') {
-				end_index = ((int)end.getValue().charAt(1)) -32;
+				hi = end.getValue().charAt(1);
 			}
 			else {
-				end_index = ((int)end.getValue().charAt(0)) - 32;
-			}
-			int current_index = start_index;
-			while(current_index <= end_index) {
-				range.add(((char)(current_index + 32)));
-				current_index++;
+				hi = end.getValue().charAt(0);
 			}
+			range.add(lo, hi);
 			return range;
 		}
 		else {
@@ -456,17 +735,26 @@ public class RecursiveDescent {
 	}
 	
 	/**
-	 * <excludeSet> -> ^ <charSet>] IN <excludeSetTail>
+	 * <excludeSet> -> ^ <charSetList> IN <excludeSetTail> | ^ <charSetList>
+	 * (without IN the chars are excluded from every char)
 	 * @param range the range that has been build so far
 	 * @return the range to include
 	 * @throws ParseException thrown if IN is not given
 	 * @throws ParseException thrown by charSet function
 	 */
-	private ArrayList<Character> excludeSet(ArrayList<Character> range) throws ParseException {
+	private Char_Ranges excludeSet(Char_Ranges range) throws ParseException {
 		System.out.println("EXCLUDE SET");
 		lexer.getNextToken();//consume CARET
-		ArrayList<Character> exclude = charSet(new ArrayList<Character>());
-		lexer.getNextToken();//consume RBRACKET
+		Char_Ranges exclude = charSetList(new Char_Ranges());//consumes RBRACKET
+		//ignoring case, [^a] leaves out A too
+		if(ignore_case) {
+			exclude = Case_Fold.close(exclude);
+		}
+		Token<Regex_TokenType> next = lexer.peekNextToken();
+		if(next.getType() != Regex_TokenType.LITERAL || !next.getValue().equals("I")) {
+			range.addAll(Char_Ranges.all().minus(exclude));
+			return range;
+		}
 		//check to make sure IN is found
 		String t = lexer.getNextToken().getValue();//consume I
 		if(!t.equals("I")) {
@@ -479,13 +767,9 @@ public class RecursiveDescent {
 					", position: " + this.lexer.getPosition(), this.lexer.getPosition());
 		}
 		
-		ArrayList<Character> in = excludeSetTail();
+		Char_Ranges in = excludeSetTail();
 		
-		for(int i = 0; i < in.size(); i++) {
-			if(!exclude.contains(in.get(i))) {
-				range.add(in.get(i));
-			}
-		}
+		range.addAll(in.minus(exclude));
 		
 		return range;
 	} 
@@ -496,17 +780,17 @@ public class RecursiveDescent {
 	 * @throws ParseException thrown by charSet function
 	 * @throws ParseException thrown by definedClass function
 	 */
-	private ArrayList<Character> excludeSetTail() throws ParseException{
+	private Char_Ranges excludeSetTail() throws ParseException{
 		Regex_TokenType type = lexer.peekNextToken().getType();
 		if(type == Regex_TokenType.LBRACKET) {
 			lexer.getNextToken();//consume LBRACKET
-			ArrayList<Character> range = charSet(new ArrayList<Character>());
+			Char_Ranges range = charSet(new Char_Ranges());
 			lexer.getNextToken();//consume RBRACKET
 			return range;
 		}
 		else{
 			Token<Regex_TokenType> token = lexer.getNextToken();
-			ArrayList<Character> range = definedClass(token, true);
+			Char_Ranges range = definedClass(token, true);
 			return range;
 		}
 	}
@@ -519,7 +803,7 @@ public class RecursiveDescent {
 	 * @throws ParseException when character class doesn't exist
 	 * @throws ParseException when character class isn't valid
 	 */
-	private ArrayList<Character> definedClass(Token<Regex_TokenType> token, boolean exclude) throws ParseException {
+	private Char_Ranges definedClass(Token<Regex_TokenType> token, boolean exclude) throws ParseException {
 		
 		NFA_Identifier phony = new NFA_Identifier(token.getValue(), null, false);
 		int index = this.defined.indexOf(phony);
@@ -540,10 +824,10 @@ public class RecursiveDescent {
 			
 			ArrayList<NFA.State.Transition> trans = temp.get(1).getTransitions();
 			
-			ArrayList<Character> set = new ArrayList<Character>();
+			Char_Ranges set = new Char_Ranges();
 			for(int i = 0; i < trans.size(); i++) {
 				if(trans.get(i).getLetter() != NFA.EPSILON) {
-					set.add(trans.get(i).getLetter());
+					set.add(trans.get(i).getLo(), trans.get(i).getHi());
 				}
 			}
 			return set;
@@ -556,6 +840,42 @@ public class RecursiveDescent {
 		}
 	}
 	
+	/**
+	 * build the dfa of an operand of & or ~
+	 * (folded first when ignoring case, so A&a matches both cases of a)
+	 * @param operand nfa of the operand (finalized here)
+	 * @return dfa of the operand
+	 * @throws DFA_Budget_Exception thrown if the dfa goes over the state budget
+	 */
+	private DFA to_dfa(NFA operand) {
+		operand.finalize();
+		if(ignore_case) {
+			operand.foldCase();
+		}
+		return new DFA(operand, false, Options.DFA_STATE_BUDGET);
+	}
+	
+	/**
+	 * check if a regex has a token of the given type
+	 * @param regex regular expression to scan
+	 * @param type token type to look for
+	 * @return true: the regex has one, false: it doesn't (or doesn't lex)
+	 */
+	private static boolean has_token(String regex, Regex_TokenType type) {
+		Regex_Lexer lexer = new Regex_Lexer(regex);
+		try {
+			for(Token<Regex_TokenType> token = lexer.getNextToken(); token.getType() != Regex_TokenType.EOF; token = lexer.getNextToken()) {
+				if(token.getType() == type) {
+					return true;
+				}
+			}
+		}
+		catch(ParseException pe) {
+			return false;
+		}
+		return false;
+	}
+	
 	/**
 	 * check if the given token is contained in the given set
 	 * @param token symbol to check validity of
@@ -571,17 +891,65 @@ public class RecursiveDescent {
 		return false;
 	}
 	
+	/**
+	 * check if a regex is nothing but an alternation of literal strings,
+	 * like foo|bar|baz or (foo|bar|baz), so it can skip the nfa altogether
+	 * @param regex regular expression to check
+	 * @return the literals, null if the regex is anything else
+	 */
+	public static ArrayList<String> literalAlternation(String regex) {
+		Regex_Lexer lexer = new Regex_Lexer(regex);
+		ArrayList<Token<Regex_TokenType>> tokens = new ArrayList<Token<Regex_TokenType>>();
+		try {
+			for(Token<Regex_TokenType> token = lexer.getNextToken(); token.getType() != Regex_TokenType.EOF; token = lexer.getNextToken()) {
+				tokens.add(token);
+			}
+		}
+		catch(ParseException pe) {
+			return null;
+		}
+		HashSet<String> re_chars = new HashSet<String>(Arrays.asList(RE_CHAR));
+		//one pair of parentheses around the whole alternation is fine
+		int from = 0;
+		int to = tokens.size();
+		if(to >= 2 && tokens.get(0).getType() == Regex_TokenType.LPAREN &&
+				tokens.get(to-1).getType() == Regex_TokenType.RPAREN) {
+			from++;
+			to--;
+		}
+		ArrayList<String> result = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		for(int i = from; i <= to; i++) {
+			if(i == to || tokens.get(i).getType() == Regex_TokenType.UNION) {
+				if(literal.length() == 0) {
+					return null;
+				}
+				result.add(literal.toString());
+				literal.setLength(0);
+				continue;
+			}
+			Token<Regex_TokenType> token = tokens.get(i);
+			if(token.getType() != Regex_TokenType.LITERAL || !re_chars.contains(token.getValue())) {
+				return null;
+			}
+			String value = token.getValue();
+			literal.append(value.charAt(0) == '\\' ? value.charAt(1) : value.charAt(0));
+		}
+		//a single literal is no alternation
+		return result.size() >= 2 ? result : null;
+	}
+	
 	/**
 	 * RE_CHAR set
 	 * set of valid characters for use in a regular expression (as literals)
 	 */
 	private static final String[] RE_CHAR = {
-			"\\ ", "!", "\\\"", "#", "$", "%", "&", "\\\'", "\\(", "\\)", "\\*", "\\+", ",", "-", "\\.", "/",
+			"\\ ", "!", "\\\"", "#", "$", "%", "\\&", "\\\'", "\\(", "\\)", "\\*", "\\+", ",", "-", "\\.", "/",
 			"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", ":", ";", "<", "=", ">", "\\?", 
 			"@", "A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L", "M", "N", "O", 
 			"P", "Q", "R", "S", "T", "U", "V", "W", "X", "Y", "Z", "\\[", "\\\\", "\\]", "^", "_", 
 			"`", "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l", "m", "n", "o", 
-			"p", "q", "r", "s", "t", "u", "v", "w", "x", "y", "z", "{", "\\|", "}", "~"		
+			"p", "q", "r", "s", "t", "u", "v", "w", "x", "y", "z", "\\{", "\\|", "\\}", "\\~"		
 	};
 	
 	/**
@@ -596,13 +964,5 @@ public class RecursiveDescent {
 			"`", "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l", "m", "n", "o", 
 			"p", "q", "r", "s", "t", "u", "v", "w", "x", "y", "z", "{", "|", "}", "~"		
 	};
-	
-	/**
-	 * DOT_CHAR set
-	 * set of characters represented by a non-escaped DOT (".") literal 
-	 */
-	public static final char[] DOT_CHAR = {
-			'\\', '*', '+', '?', '|', '[', ']', '(', ')', '.', '\'', '\"'
-	};
 }
 
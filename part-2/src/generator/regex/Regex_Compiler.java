@@ -0,0 +1,385 @@
+package generator.regex;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+
+import global.Options;
+
+/**
+ * Regex_Compiler.java
+ * Compiles regex strings into patterns using the engine chosen in Options.
+ */
+public class Regex_Compiler {
+	
+	//full subset construction up front
+	public static final String ENGINE_DFA = "dfa";
+	//dfa states built on demand while scanning
+	public static final String ENGINE_LAZY = "lazy";
+	//full dfa compiled to a jvm class
+	public static final String ENGINE_BYTECODE = "bytecode";
+	//bit-parallel position automaton, no dfa built (full dfa past 64 positions)
+	public static final String ENGINE_GLUSHKOV = "glushkov";
+	//trie with fail links, picked automatically for literal alternations (foo|bar|baz)
+	public static final String ENGINE_AHO_CORASICK = "aho-corasick";
+	//tagged dfa with capture group registers, used whenever groups are asked for
+	public static final String ENGINE_TDFA = "tdfa";
+	
+	/**
+	 * compile a regex with the engine set in Options.ENGINE
+	 * @param regex regular expression to compile
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @return pattern that accepts the same language as the regex
+	 * @throws ParseException thrown by RecursiveDescent.descend
+	 * @throws ParseException thrown if the engine doesn't exist
+	 */
+	public static Regex_Pattern compile(String regex, ArrayList<NFA_Identifier> defined) throws ParseException {
+		Aho_Corasick literals = literals(regex);
+		if(literals != null) {
+			return literals;
+		}
+		//warm start from the on-disk cache
+		Regex_Pattern cached = load(regex, defined);
+		if(cached != null) {
+			return cached;
+		}
+		long time = System.nanoTime();
+		NFA nfa = parse(regex, defined);
+		time = System.nanoTime() - time;
+		return record(build(regex, defined, nfa), regex, time);
+	}
+	
+	/**
+	 * compile a regex for finding all of its matches in a text
+	 * @param regex regular expression to compile
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @return search over the regex
+	 * @throws ParseException thrown by RecursiveDescent.descend
+	 * @throws ParseException thrown if the engine doesn't exist
+	 */
+	public static Regex_Search compileSearch(String regex, ArrayList<NFA_Identifier> defined) throws ParseException {
+		return compileSearch(regex, defined, false);
+	}
+	
+	/**
+	 * compile a regex for finding all of its matches in a text, optionally with
+	 * the groups of every match (the dfas still find the matches, the tagged dfa
+	 * only runs from their starts)
+	 * @param regex regular expression to compile
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @param captures true: matches carry their groups, false: only their spans
+	 * @return search over the regex
+	 * @throws ParseException thrown by RecursiveDescent.descend
+	 * @throws ParseException thrown if the engine doesn't exist
+	 */
+	public static Regex_Search compileSearch(String regex, ArrayList<NFA_Identifier> defined, boolean captures) throws ParseException {
+		if(captures) {
+			long time = System.nanoTime();
+			NFA nfa = parse(regex, defined, true);
+			time = System.nanoTime() - time;
+			return new Regex_Search(nfa, record(new Capture_DFA(nfa), regex, time));
+		}
+		Aho_Corasick literals = literals(regex);
+		if(literals != null) {
+			return new Regex_Search(literals);
+		}
+		//warm start, the anchored and both unanchored dfas all have to be cached
+		Regex_Pattern pattern = load(regex, defined);
+		DFA_Cache cache = cache(defined);
+		if(pattern != null) {
+			DFA[] search = cache.loadSearch(regex);
+			if(search != null) {
+				DFA anchored = pattern instanceof DFA_Bytecode ? ((DFA_Bytecode) pattern).getDFA() : (DFA) pattern;
+				//the text isn't folded, only the class map is
+				String prefix = ignore_case(regex) ? "" : anchored.getLiteralPrefix();
+				return new Regex_Search(pattern, search[0], search[1], prefix);
+			}
+		}
+		long time = System.nanoTime();
+		NFA nfa = parse(regex, defined);
+		time = System.nanoTime() - time;
+		if(pattern == null) {
+			pattern = record(build(regex, defined, nfa), regex, time);
+		}
+		else {
+			pattern.getStats().setParseTime(time);
+		}
+		Regex_Search search = new Regex_Search(nfa, pattern);
+		if(cache != null && search.getForward() != null) {
+			cache.storeSearch(regex, search.getForward(), search.getReverse());
+		}
+		return search;
+	}
+	
+	/**
+	 * compile a regex into a tagged dfa, whose matches carry the span of every
+	 * capture group (whatever Options.ENGINE is)
+	 * @param regex regular expression to compile
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @return tagged dfa of the regex
+	 * @throws ParseException thrown by RecursiveDescent.descend
+	 */
+	public static Capture_DFA compileCaptures(String regex, ArrayList<NFA_Identifier> defined) throws ParseException {
+		long time = System.nanoTime();
+		NFA nfa = parse(regex, defined, true);
+		time = System.nanoTime() - time;
+		return (Capture_DFA) record(new Capture_DFA(nfa), regex, time);
+	}
+	
+	/**
+	 * generate the nfa for a regex
+	 * @param regex regular expression to parse
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @return nfa of the regex
+	 * @throws ParseException thrown by RecursiveDescent.descend
+	 */
+	private static NFA parse(String regex, ArrayList<NFA_Identifier> defined) throws ParseException {
+		return parse(regex, defined, false);
+	}
+	
+	/**
+	 * generate the nfa for a regex, with capture states around its groups if asked
+	 * @param regex regular expression to parse
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @param captures true: groups capture (for a tagged dfa), false: they don't
+	 * @return nfa of the regex
+	 * @throws ParseException thrown by RecursiveDescent.descend
+	 */
+	private static NFA parse(String regex, ArrayList<NFA_Identifier> defined, boolean captures) throws ParseException {
+		RecursiveDescent generator = new RecursiveDescent(regex, defined, Options.CASE_INSENSITIVE, captures);
+		return generator.descend().getNFA();
+	}
+	
+	/**
+	 * build the aho-corasick automaton for a regex that is only an alternation
+	 * of literals (full dfa engines only, it replaces the subset construction;
+	 * its trie doesn't fold case, so case-insensitive regexes take the dfa)
+	 * @param regex regular expression to check
+	 * @return the automaton, null if the regex isn't a literal alternation
+	 */
+	private static Aho_Corasick literals(String regex) {
+		if(!full() || ignore_case(regex)) {
+			return null;
+		}
+		long time = System.nanoTime();
+		ArrayList<String> literals = RecursiveDescent.literalAlternation(regex);
+		if(literals == null) {
+			return null;
+		}
+		time = System.nanoTime() - time;
+		return (Aho_Corasick) record(new Aho_Corasick(literals), regex, time);
+	}
+	
+	/**
+	 * check if a regex is matched regardless of case
+	 * @param regex regular expression to check
+	 * @return true: case-insensitive, false: not
+	 */
+	private static boolean ignore_case(String regex) {
+		return Options.CASE_INSENSITIVE || regex.startsWith(RecursiveDescent.IGNORE_CASE_FLAG);
+	}
+	
+	/**
+	 * check if the chosen engine builds a full dfa
+	 * @return true: full dfa engine, false: not
+	 */
+	private static boolean full() {
+		return Options.ENGINE.equals(ENGINE_DFA) || Options.ENGINE.equals(ENGINE_BYTECODE);
+	}
+	
+	/**
+	 * open the on-disk cache if it applies to this regex
+	 * (defined classes aren't part of the key)
+	 * @param defined list of defined identifiers
+	 * @return the cache, null if there is none
+	 */
+	private static DFA_Cache cache(ArrayList<NFA_Identifier> defined) {
+		if(full() && Options.CACHE_DIR != null && (defined == null || defined.isEmpty())) {
+			return new DFA_Cache(Options.CACHE_DIR);
+		}
+		return null;
+	}
+	
+	/**
+	 * load a compiled regex from the on-disk cache
+	 * @param regex regular expression to look up
+	 * @param defined list of defined identifiers
+	 * @return cached pattern, null if it isn't cached
+	 */
+	private static Regex_Pattern load(String regex, ArrayList<NFA_Identifier> defined) {
+		DFA_Cache cache = cache(defined);
+		if(cache != null) {
+			long time = System.nanoTime();
+			DFA cached = cache.load(regex);
+			if(cached != null) {
+				cached.getStats().setCached(true);
+				cached.getStats().setLoadTime(System.nanoTime() - time);
+				return record(finish(cached), regex, 0);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * fill in where a pattern came from in its stats
+	 * @param pattern compiled pattern
+	 * @param regex regular expression it was compiled from
+	 * @param parse_time nanoseconds spent parsing the regex
+	 * @return the pattern
+	 */
+	private static Regex_Pattern record(Regex_Pattern pattern, String regex, long parse_time) {
+		String engine = ENGINE_DFA;
+		if(pattern instanceof DFA_Bytecode) {
+			engine = ENGINE_BYTECODE;
+		}
+		else if(pattern instanceof Glushkov_NFA) {
+			engine = ENGINE_GLUSHKOV;
+		}
+		else if(pattern instanceof Aho_Corasick) {
+			engine = ENGINE_AHO_CORASICK;
+		}
+		else if(pattern instanceof Lazy_DFA) {
+			engine = ENGINE_LAZY;
+		}
+		else if(pattern instanceof Capture_DFA) {
+			engine = ENGINE_TDFA;
+		}
+		pattern.getStats().setSource(regex, engine);
+		pattern.getStats().setParseTime(parse_time);
+		return pattern;
+	}
+	
+	/**
+	 * build the pattern for a regex's nfa with the chosen engine (the full dfa
+	 * engines run a counted repetition of more than 64 copies on counters too)
+	 * @param regex regular expression the nfa was generated from
+	 * @param defined list of defined identifiers
+	 * @param nfa nfa of the regex
+	 * @return pattern that accepts the same language as the regex
+	 * @throws ParseException thrown if the engine doesn't exist
+	 */
+	private static Regex_Pattern build(String regex, ArrayList<NFA_Identifier> defined, NFA nfa) throws ParseException {
+		boolean glushkov = Options.ENGINE.equals(ENGINE_GLUSHKOV);
+		if(glushkov) {
+			Glushkov_NFA bits = Glushkov_NFA.build(nfa);
+			if(bits != null) {
+				return bits;
+			}
+		}
+		//a dfa needs a state per copy of a long counted repetition, counters don't
+		if(full() && counted(nfa)) {
+			Glushkov_NFA bits = Glushkov_NFA.build(nfa);
+			if(bits != null && bits.hasCounters()) {
+				if(Options.DEBUG) {
+					System.out.println("   [DFA] " + regex + " repeats more than " + Glushkov_NFA.MAX_POSITIONS + " copies, using counters");
+				}
+				return bits;
+			}
+		}
+		//patterns with too many positions for one mask get the full dfa
+		if(full() || glushkov) {
+			DFA dfa;
+			try {
+				dfa = new DFA(nfa, false, Options.DFA_STATE_BUDGET);
+			}
+			catch(DFA_Budget_Exception dbe) {
+				return fallback(regex, nfa);
+			}
+			DFA_Cache cache = cache(defined);
+			profile(regex, cache, dfa);
+			if(cache != null) {
+				cache.store(regex, dfa);
+			}
+			return finish(dfa);
+		}
+		else if(Options.ENGINE.equals(ENGINE_LAZY)) {
+			return new Lazy_DFA(nfa);
+		}
+		else {
+			throw new ParseException("Regex ERROR: unknown engine: " + Options.ENGINE, 0);
+		}
+	}
+	
+	/**
+	 * check if an nfa has a counted repetition with more copies than one mask holds
+	 * (those are the repetitions whose dfa grows a state per copy)
+	 * @param nfa nfa of the regex
+	 * @return true: a chain is longer than Glushkov_NFA.MAX_POSITIONS, false: none is
+	 */
+	private static boolean counted(NFA nfa) {
+		for(int[] chain : nfa.getChains()) {
+			if(chain.length / 2 > Glushkov_NFA.MAX_POSITIONS) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * build the engine for a regex whose full dfa went over the state budget: the bit-parallel
+	 * automaton if its counted repetitions fit on counters, otherwise the lazy engine, which
+	 * matches the same but only keeps a bounded number of states
+	 * @param regex regular expression the nfa was generated from
+	 * @param nfa nfa of the regex
+	 * @return bit-parallel automaton or lazy dfa of the regex
+	 */
+	private static Regex_Pattern fallback(String regex, NFA nfa) {
+		//counted repetitions are what usually blow up a dfa, counters don't
+		if(!nfa.getChains().isEmpty()) {
+			Glushkov_NFA bits = Glushkov_NFA.build(nfa);
+			if(bits != null && bits.hasCounters()) {
+				if(Options.DEBUG) {
+					System.out.println("   [DFA] " + regex + " exceeds " + Options.DFA_STATE_BUDGET + " states, using counters");
+				}
+				bits.getStats().setOverBudget(true);
+				return bits;
+			}
+		}
+		if(Options.DEBUG) {
+			System.out.println("   [DFA] " + regex + " exceeds " + Options.DFA_STATE_BUDGET + " states, using the lazy engine");
+		}
+		Lazy_DFA lazy = new Lazy_DFA(nfa);
+		lazy.getStats().setOverBudget(true);
+		return lazy;
+	}
+	
+	/**
+	 * renumber a freshly built dfa by its profile over Options.PROFILE_SAMPLE,
+	 * reusing the profile saved in the cache when there is one
+	 * @param regex regular expression the dfa was compiled from
+	 * @param cache on-disk cache the profile is kept in, null if there is none
+	 * @param dfa dfa to renumber
+	 */
+	private static void profile(String regex, DFA_Cache cache, DFA dfa) {
+		if(Options.PROFILE_SAMPLE == null) {
+			return;
+		}
+		String sample = DFA_Profile.sample();
+		if(sample == null) {
+			return;
+		}
+		DFA_Profile profile = cache == null ? null : cache.loadProfile(regex, sample);
+		if(profile == null || profile.size() != dfa.size()) {
+			profile = DFA_Profile.record(dfa, sample, false);
+			if(cache != null) {
+				cache.storeProfile(regex, sample, profile);
+			}
+		}
+		dfa.renumber(profile);
+	}
+	
+	/**
+	 * turn a full dfa into the pattern for the chosen engine
+	 * @param dfa compiled (or cached) dfa
+	 * @return the dfa, or its generated class for the bytecode engine
+	 */
+	private static Regex_Pattern finish(DFA dfa) {
+		if(Options.ENGINE.equals(ENGINE_BYTECODE)) {
+			//dfas too large for one jvm method stay interpreted
+			DFA_Bytecode compiled = DFA_Bytecode.compile(dfa);
+			if(compiled != null) {
+				return compiled;
+			}
+		}
+		return dfa;
+	}
+}
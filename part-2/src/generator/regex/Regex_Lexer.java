@@ -67,6 +67,14 @@ public class Regex_Lexer extends Lexer<Token<Regex_TokenType>> {
 			case '|':
 				result = new Token<Regex_TokenType>(Regex_TokenType.UNION, "|");
 				break;
+			//intersection
+			case '&':
+				result = new Token<Regex_TokenType>(Regex_TokenType.INTERSECT, "&");
+				break;
+			//complement
+			case '~':
+				result = new Token<Regex_TokenType>(Regex_TokenType.COMPLEMENT, "~");
+				break;
 			//repetition >= 0
 			case '*':
 				result = new Token<Regex_TokenType>(Regex_TokenType.KLEENE, "*");
@@ -99,6 +107,14 @@ public class Regex_Lexer extends Lexer<Token<Regex_TokenType>> {
 			case ')':
 				result = new Token<Regex_TokenType>(Regex_TokenType.RPAREN, ")");
 				break;
+			//left brace (counted repetition)
+			case '{':
+				result = new Token<Regex_TokenType>(Regex_TokenType.LBRACE, "{");
+				break;
+			//right brace
+			case '}':
+				result = new Token<Regex_TokenType>(Regex_TokenType.RBRACE, "}");
+				break;
 			//escaped characters
 			case '\\':
 				String escaped = "\\" + this.getNextChar();
@@ -0,0 +1,24 @@
+package generator.regex;
+
+import java.text.ParseException;
+
+/**
+ * Regex_Limit_Exception.java
+ * Thrown when a regex is valid but an automaton it needs while parsing goes
+ * over a size limit (the dfas & and ~ are built from, the nfa nested counts
+ * expand to), so a script can skip the statement using the regex instead of
+ * stopping.
+ */
+public class Regex_Limit_Exception extends ParseException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * setup exception with the given message
+	 * @param message description of the limit that was exceeded
+	 * @param position position in the regex the limit was exceeded at
+	 */
+	public Regex_Limit_Exception(String message, int position) {
+		super(message, position);
+	}
+}
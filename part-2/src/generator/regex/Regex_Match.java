@@ -0,0 +1,117 @@
+package generator.regex;
+
+/**
+ * Regex_Match.java
+ * Span of text matched by a regex, along with the spans of its capture
+ * groups when it was matched by a Capture_DFA.
+ */
+public class Regex_Match {
+	
+	private int pattern;
+	private int start;
+	private int end;
+	//start and end offset of each capture group (-1 if it didn't match), empty if not captured
+	private int[] groups;
+	
+	/**
+	 * setup match of pattern 0 over text[start, end)
+	 * @param start offset of the first matched char
+	 * @param end offset just past the last matched char
+	 */
+	public Regex_Match(int start, int end) {
+		this(0, start, end);
+	}
+	
+	/**
+	 * setup match of the given pattern over text[start, end)
+	 * @param pattern id of the pattern that matched
+	 * @param start offset of the first matched char
+	 * @param end offset just past the last matched char
+	 */
+	public Regex_Match(int pattern, int start, int end) {
+		this.pattern = pattern;
+		this.start = start;
+		this.end = end;
+		this.groups = new int[0];
+	}
+	
+	/**
+	 * setup match of pattern 0 over text[start, end) with the spans of its groups
+	 * @param start offset of the first matched char
+	 * @param end offset just past the last matched char
+	 * @param groups start and end offset of each group in order (-1 if it didn't match)
+	 */
+	public Regex_Match(int start, int end, int[] groups) {
+		this(0, start, end);
+		this.groups = groups;
+	}
+	
+	/**
+	 * accessor for the pattern that matched (0 for a single regex)
+	 * @return id of the pattern that matched
+	 */
+	public int getPattern() {
+		return this.pattern;
+	}
+	
+	/**
+	 * accessor for the start of the match
+	 * @return offset of the first matched char
+	 */
+	public int getStart() {
+		return this.start;
+	}
+	
+	/**
+	 * accessor for the end of the match
+	 * @return offset just past the last matched char
+	 */
+	public int getEnd() {
+		return this.end;
+	}
+	
+	/**
+	 * accessor for the number of capture groups
+	 * @return number of groups, 0 if the match wasn't captured
+	 */
+	public int getGroupCount() {
+		return this.groups.length / 2;
+	}
+	
+	/**
+	 * accessor for the start of a group
+	 * @param group number of the group, 0 for the whole match
+	 * @return offset of the group's first char, -1 if it didn't match
+	 */
+	public int getGroupStart(int group) {
+		return group == 0 ? this.start : this.groups[2 * (group-1)];
+	}
+	
+	/**
+	 * accessor for the end of a group
+	 * @param group number of the group, 0 for the whole match
+	 * @return offset just past the group's last char, -1 if it didn't match
+	 */
+	public int getGroupEnd(int group) {
+		return group == 0 ? this.end : this.groups[2 * (group-1) + 1];
+	}
+	
+	/**
+	 * get the text a group matched
+	 * @param text text the match was found in
+	 * @param group number of the group, 0 for the whole match
+	 * @return the group's text, null if it didn't match
+	 */
+	public String getGroup(CharSequence text, int group) {
+		int start = this.getGroupStart(group);
+		return start == -1 ? null : text.subSequence(start, this.getGroupEnd(group)).toString();
+	}
+	
+	/**
+	 * generate string representation of the match
+	 * @return string representation of the match
+	 */
+	public String toString() {
+		return this.pattern + ":[" + this.start + ", " + this.end + ")";
+	}
+}
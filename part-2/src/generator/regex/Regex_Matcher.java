@@ -0,0 +1,48 @@
+package generator.regex;
+
+/**
+ * Regex_Matcher.java
+ * Common stepping interface for the compiled regex engines.
+ */
+public interface Regex_Matcher {
+	
+	/**
+	 * goto the next state via the given letter
+	 * @param letter value to transition on
+	 */
+	public void gotoNext(char letter);
+	
+	/**
+	 * check if the current state is a final state
+	 * @return true: the matcher is in an accept state, false: it is not
+	 */
+	public boolean atFinal();
+	
+	/**
+	 * check if the matcher is dead (no match can be extended any further)
+	 * @return true: the matcher is in a dead state, false: it is not
+	 */
+	public boolean atDead();
+	
+	/**
+	 * check if stepping further could still reach an accept state
+	 * (false once the current match can't be extended, so scans can stop early)
+	 * @return true: a longer match is possible, false: it is not
+	 */
+	public boolean canContinue();
+	
+	/**
+	 * reset the matcher to the start state
+	 */
+	public void reset();
+	
+	/**
+	 * run the whole longest-match loop from the start state over text[from, to)
+	 * (the matcher is left at the start state)
+	 * @param text text to scan
+	 * @param from offset to start the match at
+	 * @param to offset to stop scanning at
+	 * @return offset just past the longest non-empty match, -1 if nothing matched
+	 */
+	public int longestMatchEnd(CharSequence text, int from, int to);
+}
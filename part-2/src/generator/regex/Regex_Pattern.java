@@ -0,0 +1,21 @@
+package generator.regex;
+
+/**
+ * Regex_Pattern.java
+ * Compiled regex that doesn't change once built. All scan state lives in
+ * the matchers it hands out, so one pattern can serve many scans at once.
+ */
+public interface Regex_Pattern {
+	
+	/**
+	 * make a new matcher at the start of this pattern
+	 * @return new matcher over this pattern
+	 */
+	public Regex_Matcher matcher();
+	
+	/**
+	 * accessor for the sizes and compile times of this pattern
+	 * @return stats of this pattern
+	 */
+	public Regex_Stats getStats();
+}
@@ -0,0 +1,375 @@
+package generator.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import global.Options;
+
+/**
+ * Regex_Search.java
+ * Finds every leftmost-longest, non-overlapping match of a regex in a text.
+ * An unanchored dfa finds where the last match ends and an unanchored dfa of
+ * the reversed regex, run backwards, marks every offset a match starts at,
+ * so the anchored pattern is only run from real match starts.
+ * When every match starts with the same literal, a boyer-moore-horspool
+ * skip loop jumps between its occurrences instead. A plain alternation of
+ * literals is searched with its aho-corasick automaton alone. A search
+ * compiled with captures runs a Capture_DFA from each match start, so every
+ * match comes with its groups.
+ */
+public class Regex_Search {
+	
+	//failed prefix candidates tolerated before the reverse dfa filters them
+	private static final int MAX_MISSES = 32;
+	
+	//anchored pattern, gives the longest match from a start
+	private Regex_Pattern pattern;
+	//the pattern as a dfa whose accept states carry pattern ids (multi-pattern searches)
+	private DFA tagged;
+	//unanchored dfa of the regex, final right after a match ends
+	private DFA forward;
+	//unanchored dfa of the reversed regex, final right after (before) a match starts
+	private DFA reverse;
+	//bit-parallel automata of the regex and the reversed regex, used in place of the dfas
+	private Glushkov_NFA bit_forward;
+	private Glushkov_NFA bit_reverse;
+	//literal every match starts with (empty if none)
+	private char[] prefix;
+	//horspool shift for each low byte of a char
+	private int[] skip;
+	//automaton of a literal alternation, marks match starts in place of the reverse dfa
+	private Aho_Corasick literals;
+	//tagged dfa of the regex, runs from each match start in place of the pattern
+	//so matches carry their groups (null unless compiled with captures)
+	private Capture_DFA captures;
+	
+	/**
+	 * setup search for the given nfa
+	 * @param nfa nfa of the regex
+	 * @param pattern compiled anchored pattern of the same regex
+	 */
+	public Regex_Search(NFA nfa, Regex_Pattern pattern) {
+		this(nfa, pattern, null);
+	}
+	
+	/**
+	 * setup search for the given nfa, optionally reporting pattern ids
+	 * @param nfa nfa of the regex (end states tagged for a multi-pattern search)
+	 * @param pattern compiled anchored pattern of the same regex
+	 * @param tagged the pattern as a multi-pattern dfa, null for a single regex
+	 */
+	Regex_Search(NFA nfa, Regex_Pattern pattern, DFA tagged) {
+		this.pattern = pattern;
+		this.tagged = tagged;
+		if(pattern instanceof Capture_DFA) {
+			this.captures = (Capture_DFA) pattern;
+		}
+		if(pattern instanceof Glushkov_NFA) {
+			//reversing keeps the positions and counters, but a reversed chain can fail to collapse
+			this.bit_forward = (Glushkov_NFA) pattern;
+			this.bit_reverse = Glushkov_NFA.build(nfa.reverse());
+			if(this.bit_reverse == null) {
+				this.bit_forward = null;
+			}
+		}
+		//the lazy engine exists to avoid building full dfas, so it keeps scanning every index
+		else if(!(pattern instanceof Lazy_DFA)) {
+			try {
+				this.forward = new DFA(nfa, true, Options.DFA_STATE_BUDGET);
+				this.reverse = new DFA(nfa.reverse(), true, Options.DFA_STATE_BUDGET);
+				//the forward dfa runs over the whole text, lay it out for the sample
+				String sample = DFA_Profile.sample();
+				if(sample != null) {
+					this.forward.renumber(DFA_Profile.record(this.forward, sample, true));
+				}
+			}
+			catch(DFA_Budget_Exception dbe) {
+				//unanchored dfas can blow up where the anchored one didn't, scan every index instead
+				this.forward = null;
+				this.reverse = null;
+			}
+		}
+		this.setup_prefix(nfa.getLiteralPrefix());
+	}
+	
+	/**
+	 * setup search over unanchored dfas built earlier (read from the DFA_Cache)
+	 * @param pattern compiled anchored pattern of the regex
+	 * @param forward unanchored dfa of the regex
+	 * @param reverse unanchored dfa of the reversed regex
+	 * @param prefix literal every match starts with (empty if none)
+	 */
+	Regex_Search(Regex_Pattern pattern, DFA forward, DFA reverse, String prefix) {
+		this.pattern = pattern;
+		this.forward = forward;
+		this.reverse = reverse;
+		this.setup_prefix(prefix);
+	}
+	
+	/**
+	 * setup the horspool shifts for the literal every match starts with
+	 * @param prefix required prefix, empty if there is none
+	 */
+	private void setup_prefix(String prefix) {
+		this.prefix = prefix.toCharArray();
+		int m = this.prefix.length;
+		this.skip = new int[256];
+		Arrays.fill(this.skip, Math.max(m, 1));
+		//chars sharing a low byte keep the smallest shift
+		for(int k = 0; k < m - 1; k++) {
+			this.skip[this.prefix[k] & 0xFF] = m - 1 - k;
+		}
+	}
+	
+	/**
+	 * setup search for a literal alternation
+	 * @param literals automaton of the literals
+	 */
+	public Regex_Search(Aho_Corasick literals) {
+		this.pattern = literals;
+		this.literals = literals;
+		this.prefix = new char[0];
+		this.skip = new int[256];
+		Arrays.fill(this.skip, 1);
+	}
+	
+	/**
+	 * accessor for the anchored pattern
+	 * @return the anchored pattern
+	 */
+	public Regex_Pattern getPattern() {
+		return this.pattern;
+	}
+	
+	/**
+	 * accessor for the unanchored dfa of the regex (for the DFA_Cache)
+	 * @return the forward dfa, null if the search doesn't scan with one
+	 */
+	DFA getForward() {
+		return this.forward;
+	}
+	
+	/**
+	 * accessor for the unanchored dfa of the reversed regex (for the DFA_Cache)
+	 * @return the reverse dfa, null if the search doesn't scan with one
+	 */
+	DFA getReverse() {
+		return this.reverse;
+	}
+	
+	/**
+	 * accessor for the literal every match starts with
+	 * @return the required prefix, empty if there is none
+	 */
+	public String getPrefix() {
+		return new String(this.prefix);
+	}
+	
+	/**
+	 * find all matches in the given text, scanning left to right, taking the
+	 * longest match at the first offset one starts at and resuming after it
+	 * @param text text to search
+	 * @return list of matches in order
+	 */
+	public ArrayList<Regex_Match> findAll(CharSequence text) {
+		ArrayList<Regex_Match> result = new ArrayList<Regex_Match>();
+		Regex_Matcher matcher = this.pattern.matcher();
+		if(this.literals != null) {
+			return this.find_starts(text, this.literals.starts(text), text.length(), matcher, result);
+		}
+		if(this.forward == null && this.bit_forward == null) {
+			//only offsets the prefix occurs at can start a match
+			int i = this.next_candidate(text, 0, text.length());
+			while(i >= 0) {
+				Regex_Match match = this.match_at(matcher, text, i, text.length());
+				if(match == null) {
+					i = this.next_candidate(text, i + 1, text.length());
+				}
+				else {
+					result.add(match);
+					i = this.next_candidate(text, match.getEnd(), text.length());
+				}
+			}
+			return result;
+		}
+		
+		//no match ends past limit
+		int limit = this.last_end(text);
+		if(limit == -1) {
+			return result;
+		}
+		if(this.prefix.length > 0) {
+			return this.find_candidates(text, limit, matcher, result);
+		}
+		return this.find_starts(text, this.starts(text, limit), limit, matcher, result);
+	}
+	
+	/**
+	 * find all matches given every offset a match starts at
+	 * @param text text to search
+	 * @param starts set of offsets a non-empty match starts at
+	 * @param limit offset no match ends past
+	 * @param matcher matcher over the anchored pattern
+	 * @param result list to add the matches to
+	 * @return the result list
+	 */
+	private ArrayList<Regex_Match> find_starts(CharSequence text, BitSet starts, int limit, Regex_Matcher matcher, ArrayList<Regex_Match> result) {
+		for(int i = starts.nextSetBit(0); i >= 0; i = starts.nextSetBit(i)) {
+			//a non-empty match starts at i, so there is one
+			Regex_Match match = this.match_at(matcher, text, i, limit);
+			result.add(match);
+			i = match.getEnd();
+		}
+		return result;
+	}
+	
+	/**
+	 * find all matches by trying the anchored pattern at each prefix occurrence,
+	 * once too many occurrences fail the reverse dfa filters the rest
+	 * @param text text to search
+	 * @param limit offset no match ends past
+	 * @param matcher matcher over the anchored pattern
+	 * @param result list to add the matches to
+	 * @return the result list
+	 */
+	private ArrayList<Regex_Match> find_candidates(CharSequence text, int limit, Regex_Matcher matcher, ArrayList<Regex_Match> result) {
+		BitSet starts = null;
+		int misses = 0;
+		int i = this.next_candidate(text, 0, limit);
+		while(i >= 0) {
+			if(starts != null && !starts.get(i)) {
+				i = this.next_candidate(text, i + 1, limit);
+				continue;
+			}
+			Regex_Match match = this.match_at(matcher, text, i, limit);
+			if(match == null) {
+				if(++misses == MAX_MISSES) {
+					starts = this.starts(text, limit);
+				}
+				i = this.next_candidate(text, i + 1, limit);
+			}
+			else {
+				result.add(match);
+				i = this.next_candidate(text, match.getEnd(), limit);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * run the anchored pattern from the given offset
+	 * @param matcher matcher over the anchored pattern
+	 * @param text text to scan
+	 * @param from offset the match starts at
+	 * @param to offset no match ends past
+	 * @return the longest match, null if there is none
+	 */
+	private Regex_Match match_at(Regex_Matcher matcher, CharSequence text, int from, int to) {
+		if(this.tagged != null) {
+			return this.tagged.longestMatch(text, from, to);
+		}
+		if(this.captures != null) {
+			return ((Capture_DFA.Cursor) matcher).longestMatch(text, from, to);
+		}
+		int end = matcher.longestMatchEnd(text, from, to);
+		return end == -1 ? null : new Regex_Match(from, end);
+	}
+	
+	/**
+	 * find the next offset the prefix occurs at (horspool)
+	 * @param text text to search
+	 * @param from first offset to check
+	 * @param to offset the prefix has to end by
+	 * @return offset of the next occurrence, -1 if there is none
+	 */
+	private int next_candidate(CharSequence text, int from, int to) {
+		char[] prefix = this.prefix;
+		int m = prefix.length;
+		if(m == 0) {
+			return from < to ? from : -1;
+		}
+		int last = m - 1;
+		char tail = prefix[last];
+		for(int i = from; i + m <= to; ) {
+			char letter = text.charAt(i + last);
+			if(letter == tail) {
+				int j = last - 1;
+				while(j >= 0 && text.charAt(i + j) == prefix[j]) {
+					j--;
+				}
+				if(j < 0) {
+					return i;
+				}
+			}
+			i += this.skip[letter & 0xFF];
+		}
+		return -1;
+	}
+	
+	/**
+	 * run the unanchored dfa (or automaton) over the whole text, jumping to the next prefix
+	 * occurrence whenever no match is in progress
+	 * @param text text to search
+	 * @return offset just past the last char any match ends on, -1 if none
+	 */
+	private int last_end(CharSequence text) {
+		if(this.bit_forward != null) {
+			return this.bit_forward.lastEnd(text);
+		}
+		int[] table = this.forward.getTable();
+		boolean[] finals = this.forward.getFinals();
+		char[][] class_map = this.forward.getAlphabet().getPages();
+		int classes = this.forward.getAlphabet().size();
+		boolean skipping = this.prefix.length > 0;
+		int state = 0;
+		int last = -1;
+		for(int i = 0; i < text.length(); i++) {
+			if(state == 0 && skipping) {
+				i = this.next_candidate(text, i, text.length());
+				if(i == -1) {
+					break;
+				}
+			}
+			char letter = text.charAt(i);
+			state = table[state * classes + class_map[letter >>> 8][letter & 0xFF]];
+			if(state == DFA.DEAD) {
+				//the regex matches nothing
+				break;
+			}
+			if(finals[state]) {
+				last = i + 1;
+			}
+		}
+		return last;
+	}
+	
+	/**
+	 * run the reversed unanchored dfa (or automaton) backwards from limit
+	 * @param text text to search
+	 * @param limit offset no match ends past
+	 * @return set of offsets a non-empty match starts at
+	 */
+	private BitSet starts(CharSequence text, int limit) {
+		if(this.bit_reverse != null) {
+			return this.bit_reverse.starts(text, limit);
+		}
+		int[] table = this.reverse.getTable();
+		boolean[] finals = this.reverse.getFinals();
+		char[][] class_map = this.reverse.getAlphabet().getPages();
+		int classes = this.reverse.getAlphabet().size();
+		BitSet starts = new BitSet(limit);
+		int state = 0;
+		for(int i = limit - 1; i >= 0; i--) {
+			char letter = text.charAt(i);
+			state = table[state * classes + class_map[letter >>> 8][letter & 0xFF]];
+			if(state == DFA.DEAD) {
+				break;
+			}
+			if(finals[state]) {
+				starts.set(i);
+			}
+		}
+		return starts;
+	}
+}
@@ -0,0 +1,143 @@
+package generator.regex;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+
+import global.Options;
+
+/**
+ * Regex_Set.java
+ * Set of regexes compiled into one dfa whose accept states carry the id of
+ * the pattern they accept, so a text is scanned once for all of them.
+ * Matches are leftmost-longest over the whole set; when two patterns match
+ * the same longest span the one with the lower id wins. Scripts reach it
+ * through findany (see Interpreter).
+ */
+public class Regex_Set {
+	
+	private ArrayList<String> regexes;
+	private DFA dfa;
+	private Regex_Search search;
+	//patterns on their own, used when the combined dfa goes over the state budget
+	private Lazy_DFA[] lazy;
+	private Regex_Stats stats;
+	
+	/**
+	 * compile the given regexes, pattern ids are their list indexes
+	 * @param regexes regular expressions to compile
+	 * @param defined list of defined identifiers (char classes and regular expressions)
+	 * @throws ParseException thrown by RecursiveDescent.descend
+	 */
+	public Regex_Set(ArrayList<String> regexes, ArrayList<NFA_Identifier> defined) throws ParseException {
+		this.regexes = new ArrayList<String>(regexes);
+		//every pattern in parallel off one start state
+		NFA merged = new NFA();
+		ArrayList<NFA> nfas = new ArrayList<NFA>();
+		long time = System.nanoTime();
+		boolean folded = true;
+		for(int i = 0; i < regexes.size(); i++) {
+			RecursiveDescent generator = new RecursiveDescent(regexes.get(i), defined, Options.CASE_INSENSITIVE);
+			NFA nfa = generator.descend().getNFA();
+			nfa.setTag(i);
+			folded &= nfa.isIgnoreCase();
+			nfas.add(nfa);
+		}
+		//all patterns ignore case: merge them folded, else merge unfolds the ones that do
+		if(folded) {
+			merged.foldCase();
+		}
+		for(NFA nfa : nfas) {
+			merged.merge(nfa);
+		}
+		time = System.nanoTime() - time;
+		try {
+			this.dfa = new DFA(merged, false, Options.DFA_STATE_BUDGET);
+			this.stats = this.dfa.getStats();
+			this.stats.setSource(String.join(" | ", regexes), Regex_Compiler.ENGINE_DFA);
+			this.search = new Regex_Search(merged, this.dfa, this.dfa);
+		}
+		catch(DFA_Budget_Exception dbe) {
+			//one lazy dfa per pattern, every pattern is tried at every offset
+			this.dfa = null;
+			this.lazy = new Lazy_DFA[nfas.size()];
+			for(int i = 0; i < nfas.size(); i++) {
+				this.lazy[i] = new Lazy_DFA(nfas.get(i));
+			}
+			this.stats = new Regex_Stats();
+			this.stats.setNFA(merged);
+			this.stats.setSource(String.join(" | ", regexes), Regex_Compiler.ENGINE_LAZY);
+			this.stats.setOverBudget(true);
+		}
+		this.stats.setParseTime(time);
+	}
+	
+	/**
+	 * accessor for the number of patterns in the set
+	 * @return number of patterns
+	 */
+	public int size() {
+		return this.regexes.size();
+	}
+	
+	/**
+	 * accessor for a pattern's regex
+	 * @param pattern id of the pattern
+	 * @return the regex string
+	 */
+	public String getRegex(int pattern) {
+		return this.regexes.get(pattern);
+	}
+	
+	/**
+	 * accessor for the combined dfa
+	 * @return dfa whose accept states carry pattern ids, null if it went over the state budget
+	 */
+	public DFA getDFA() {
+		return this.dfa;
+	}
+	
+	/**
+	 * accessor for the sizes and compile times of the combined dfa
+	 * @return stats of the combined dfa
+	 */
+	public Regex_Stats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * find every match of any pattern in one pass over the text
+	 * @param text text to search
+	 * @return matches in order, each with the id of the pattern that matched
+	 */
+	public ArrayList<Regex_Match> scan(CharSequence text) {
+		if(this.lazy == null) {
+			return this.search.findAll(text);
+		}
+		ArrayList<Regex_Match> result = new ArrayList<Regex_Match>();
+		Regex_Matcher[] matchers = new Regex_Matcher[this.lazy.length];
+		for(int p = 0; p < this.lazy.length; p++) {
+			matchers[p] = this.lazy[p].matcher();
+		}
+		int i = 0;
+		while(i < text.length()) {
+			//longest non-empty match over the set, the lower id wins a tie
+			int pattern = -1;
+			int end = i;
+			for(int p = 0; p < matchers.length; p++) {
+				int e = matchers[p].longestMatchEnd(text, i, text.length());
+				if(e > end) {
+					pattern = p;
+					end = e;
+				}
+			}
+			if(pattern == -1) {
+				i++;
+			}
+			else {
+				result.add(new Regex_Match(pattern, i, end));
+				i = end;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,352 @@
+package generator.regex;
+
+/**
+ * Regex_Stats.java
+ * Sizes and compile times of a compiled regex, for finding expensive patterns.
+ * Counts that don't apply to the engine (or weren't measured) are -1.
+ */
+public class Regex_Stats {
+	
+	private String regex;
+	private String engine;
+	private boolean cached;
+	//the full dfa went over the state budget, so a fallback engine was used
+	private boolean over_budget;
+	//states were renumbered by a DFA_Profile
+	private boolean profiled;
+	private int nfa_states;
+	private int nfa_transitions;
+	private int dfa_states;
+	private int min_states;
+	private int classes;
+	private long table_bytes;
+	//per phase compile times in nanoseconds
+	private long parse_time;
+	private long subset_time;
+	private long minimize_time;
+	private long codegen_time;
+	//automata built straight from the nfa, no subset construction (glushkov)
+	private long build_time;
+	private long load_time;
+	
+	/**
+	 * setup stats with nothing measured
+	 */
+	public Regex_Stats() {
+		this.regex = null;
+		this.engine = null;
+		this.cached = false;
+		this.over_budget = false;
+		this.profiled = false;
+		this.nfa_states = -1;
+		this.nfa_transitions = -1;
+		this.dfa_states = -1;
+		this.min_states = -1;
+		this.classes = -1;
+		this.table_bytes = -1;
+	}
+	
+	/**
+	 * record the size of the nfa a pattern was built from
+	 * @param nfa nfa to count
+	 */
+	void setNFA(NFA nfa) {
+		this.nfa_states = nfa.size();
+		this.nfa_transitions = 0;
+		for(int i = 0; i < nfa.size(); i++) {
+			this.nfa_transitions += nfa.get(i).getTransitions().size();
+		}
+	}
+	
+	/**
+	 * record the size of a built dfa
+	 * @param dfa_states states after subset construction
+	 * @param min_states states after minimization
+	 * @param classes number of char classes
+	 */
+	void setDFA(int dfa_states, int min_states, int classes) {
+		this.dfa_states = dfa_states;
+		this.min_states = min_states;
+		this.classes = classes;
+		this.table_bytes = 4L * min_states * classes;
+	}
+	
+	/**
+	 * mutator for the regex and engine the pattern was compiled with
+	 * @param regex regular expression string
+	 * @param engine engine name (see Regex_Compiler)
+	 */
+	void setSource(String regex, String engine) {
+		this.regex = regex;
+		this.engine = engine;
+	}
+	
+	/**
+	 * mutator for the number of char classes
+	 * @param classes number of char classes
+	 */
+	void setClasses(int classes) {
+		this.classes = classes;
+	}
+	
+	/**
+	 * mutator for the cached flag
+	 * @param cached true: loaded from the on-disk cache, false: compiled
+	 */
+	void setCached(boolean cached) {
+		this.cached = cached;
+	}
+	
+	/**
+	 * mutator for the over budget flag
+	 * @param over_budget true: the full dfa went over the state budget, false: it didn't
+	 */
+	void setOverBudget(boolean over_budget) {
+		this.over_budget = over_budget;
+	}
+	
+	/**
+	 * mutator for the profiled flag
+	 * @param profiled true: states were renumbered by a profile, false: they weren't
+	 */
+	void setProfiled(boolean profiled) {
+		this.profiled = profiled;
+	}
+	
+	/**
+	 * mutator for the parse time
+	 * @param time nanoseconds spent parsing and building the nfa
+	 */
+	void setParseTime(long time) {
+		this.parse_time = time;
+	}
+	
+	/**
+	 * mutator for the subset construction time
+	 * @param time nanoseconds spent building the dfa from the nfa
+	 */
+	void setSubsetTime(long time) {
+		this.subset_time = time;
+	}
+	
+	/**
+	 * mutator for the minimization time
+	 * @param time nanoseconds spent minimizing the dfa
+	 */
+	void setMinimizeTime(long time) {
+		this.minimize_time = time;
+	}
+	
+	/**
+	 * mutator for the class generation time
+	 * @param time nanoseconds spent generating and loading bytecode
+	 */
+	void setCodegenTime(long time) {
+		this.codegen_time = time;
+	}
+	
+	/**
+	 * mutator for the time spent building an automaton that has no subset construction
+	 * @param time nanoseconds spent building the automaton from the nfa
+	 */
+	void setBuildTime(long time) {
+		this.build_time = time;
+	}
+	
+	/**
+	 * mutator for the cache load time
+	 * @param time nanoseconds spent loading from the on-disk cache
+	 */
+	void setLoadTime(long time) {
+		this.load_time = time;
+	}
+	
+	/**
+	 * accessor for the regex string
+	 * @return the regex, null if unknown
+	 */
+	public String getRegex() {
+		return this.regex;
+	}
+	
+	/**
+	 * accessor for the engine name
+	 * @return the engine the pattern was compiled with, null if unknown
+	 */
+	public String getEngine() {
+		return this.engine;
+	}
+	
+	/**
+	 * check if the pattern came from the on-disk cache
+	 * @return true: loaded from the cache, false: compiled
+	 */
+	public boolean isCached() {
+		return this.cached;
+	}
+	
+	/**
+	 * check if the full dfa went over the state budget (getEngine tells the fallback used)
+	 * @return true: over the budget, false: not
+	 */
+	public boolean isOverBudget() {
+		return this.over_budget;
+	}
+	
+	/**
+	 * check if the states were renumbered by a profile
+	 * @return true: profiled, false: not
+	 */
+	public boolean isProfiled() {
+		return this.profiled;
+	}
+	
+	/**
+	 * accessor for the number of nfa states
+	 * @return nfa states, -1 if unknown
+	 */
+	public int getNFAStates() {
+		return this.nfa_states;
+	}
+	
+	/**
+	 * accessor for the number of nfa transitions (epsilon included)
+	 * @return nfa transitions, -1 if unknown
+	 */
+	public int getNFATransitions() {
+		return this.nfa_transitions;
+	}
+	
+	/**
+	 * accessor for the number of dfa states after subset construction
+	 * @return dfa states before minimization, -1 if no full dfa was built
+	 */
+	public int getDFAStates() {
+		return this.dfa_states;
+	}
+	
+	/**
+	 * accessor for the number of dfa states after minimization
+	 * @return dfa states after minimization, -1 if no full dfa was built
+	 */
+	public int getMinimizedStates() {
+		return this.min_states;
+	}
+	
+	/**
+	 * accessor for the alphabet size
+	 * @return number of char classes, -1 if unknown
+	 */
+	public int getClasses() {
+		return this.classes;
+	}
+	
+	/**
+	 * accessor for the size of the transition table
+	 * @return table bytes, -1 if no full dfa was built
+	 */
+	public long getTableBytes() {
+		return this.table_bytes;
+	}
+	
+	/**
+	 * accessor for the parse time (thompson construction runs during the parse)
+	 * @return nanoseconds spent parsing and building the nfa
+	 */
+	public long getParseTime() {
+		return this.parse_time;
+	}
+	
+	/**
+	 * accessor for the subset construction time
+	 * @return nanoseconds spent building the dfa
+	 */
+	public long getSubsetTime() {
+		return this.subset_time;
+	}
+	
+	/**
+	 * accessor for the minimization time
+	 * @return nanoseconds spent minimizing
+	 */
+	public long getMinimizeTime() {
+		return this.minimize_time;
+	}
+	
+	/**
+	 * accessor for the class generation time
+	 * @return nanoseconds spent generating bytecode
+	 */
+	public long getCodegenTime() {
+		return this.codegen_time;
+	}
+	
+	/**
+	 * accessor for the time spent building an automaton that has no subset construction
+	 * @return nanoseconds spent building the automaton
+	 */
+	public long getBuildTime() {
+		return this.build_time;
+	}
+	
+	/**
+	 * accessor for the cache load time
+	 * @return nanoseconds spent loading from the cache
+	 */
+	public long getLoadTime() {
+		return this.load_time;
+	}
+	
+	/**
+	 * accessor for the total compile time
+	 * @return nanoseconds spent in every phase
+	 */
+	public long getTotalTime() {
+		return this.parse_time + this.subset_time + this.minimize_time + this.codegen_time + this.build_time + this.load_time;
+	}
+	
+	/**
+	 * format nanoseconds as milliseconds
+	 * @param time nanoseconds
+	 * @return milliseconds with two decimals
+	 */
+	private static String ms(long time) {
+		return String.format("%.2f ms", time / 1e6);
+	}
+	
+	/**
+	 * generate string representation of the stats
+	 * @return string representation of the stats
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append("[Stats] regex: " + this.regex + "\n");
+		result.append("   engine: " + this.engine + (this.cached ? " (cached)" : "") +
+				(this.over_budget ? " (dfa over the state budget)" : "") + (this.profiled ? " (profiled)" : "") + "\n");
+		if(this.nfa_states != -1) {
+			result.append("   nfa: " + this.nfa_states + " states, " + this.nfa_transitions + " transitions\n");
+		}
+		if(this.min_states != -1) {
+			result.append("   dfa: " + this.dfa_states + " -> " + this.min_states + " states\n");
+		}
+		result.append("   alphabet: " + this.classes + " classes\n");
+		if(this.table_bytes != -1) {
+			result.append("   table: " + this.table_bytes + " bytes\n");
+		}
+		result.append("   time: parse " + ms(this.parse_time));
+		if(this.build_time != 0) {
+			result.append(", build " + ms(this.build_time));
+		}
+		else {
+			result.append(", subset " + ms(this.subset_time) + ", minimize " + ms(this.minimize_time));
+		}
+		if(this.codegen_time != 0) {
+			result.append(", codegen " + ms(this.codegen_time));
+		}
+		if(this.load_time != 0) {
+			result.append(", load " + ms(this.load_time));
+		}
+		result.append(", total " + ms(this.getTotalTime()));
+		return result.toString();
+	}
+}
@@ -25,6 +25,10 @@ public enum Regex_TokenType {
 	RBRACKET,
 	LPAREN,
 	RPAREN,
-	IN
+	IN,
+	INTERSECT,
+	COMPLEMENT,
+	LBRACE,
+	RBRACE
 }
 
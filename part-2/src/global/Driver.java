@@ -23,6 +23,38 @@ public class Driver {
 		
 		Scanner scan = new Scanner(System.in);
 		
+		//command line options
+		for(int i = 0; i < args.length; i++) {
+			//regex engine: dfa, lazy, bytecode, glushkov
+			if(args[i].equals("-engine") && i+1 < args.length) {
+				Options.ENGINE = args[++i];
+			}
+			//compiled dfa cache directory
+			else if(args[i].equals("-cache") && i+1 < args.length) {
+				Options.CACHE_DIR = args[++i];
+			}
+			//dfa state budget
+			else if(args[i].equals("-budget") && i+1 < args.length) {
+				Options.DFA_STATE_BUDGET = Integer.parseInt(args[++i]);
+			}
+			//threads for subset construction
+			else if(args[i].equals("-threads") && i+1 < args.length) {
+				Options.DFA_THREADS = Integer.parseInt(args[++i]);
+			}
+			//sample text to profile dfas over
+			else if(args[i].equals("-profile") && i+1 < args.length) {
+				Options.PROFILE_SAMPLE = args[++i];
+			}
+			//match regexes regardless of case
+			else if(args[i].equals("-i")) {
+				Options.CASE_INSENSITIVE = true;
+			}
+			//print regex compile stats
+			else if(args[i].equals("-stats")) {
+				Options.STATS = true;
+			}
+		}
+		
 		String spec_file = "specification/minire-specification-NEW.txt";
 		
 		System.out.println("Generating Scanner/Parser...\n");
@@ -6,4 +6,24 @@ package global;
  */
 public class Options {
 	public static boolean DEBUG;
+	//minimize every dfa after subset construction
+	public static boolean MINIMIZE = true;
+	//regex engine used by the interpreter (see Regex_Compiler)
+	public static String ENGINE = "dfa";
+	//max number of states subset construction may make before the regex falls back to the lazy engine (0: no limit)
+	public static int DFA_STATE_BUDGET = 10000;
+	//threads subset construction may use (1: always single-threaded)
+	public static int DFA_THREADS = Runtime.getRuntime().availableProcessors();
+	//smallest nfa (in states) subset construction is run in parallel for
+	public static int PARALLEL_NFA_STATES = 1000;
+	//max number of states a lazy dfa keeps before flushing
+	public static int LAZY_CACHE_SIZE = 4096;
+	//directory of the on-disk compiled dfa cache (null: no cache)
+	public static String CACHE_DIR = null;
+	//sample text file compiled dfas are profiled over and renumbered by (null: no profiling)
+	public static String PROFILE_SAMPLE = null;
+	//compile every regex to match regardless of case (one regex: start it with (?i))
+	public static boolean CASE_INSENSITIVE = false;
+	//print compile stats for every regex the interpreter compiles
+	public static boolean STATS = false;
 }
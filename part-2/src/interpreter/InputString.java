@@ -11,6 +11,8 @@ public class InputString {
 	
 	private String str;
 	private ArrayList<StringFileData> metadata;
+	//id of the findany pattern that matched this string, -1 for a plain find
+	private int pattern;
 	
 	/**
 	 * setup an input string with given value
@@ -19,6 +21,7 @@ public class InputString {
 	public InputString(String str) {
 		this.str = str;
 		this.metadata = new ArrayList<StringFileData>();
+		this.pattern = -1;
 	}
 	
 	/**
@@ -48,6 +51,22 @@ public class InputString {
 		return this.metadata;
 	}
 	
+	/**
+	 * accessor for the id of the pattern that matched this string
+	 * @return index of the regex in its findany, -1 if it came from a plain find
+	 */
+	public int getPattern() {
+		return this.pattern;
+	}
+	
+	/**
+	 * mutator for the id of the pattern that matched this string
+	 * @param pattern index of the regex in its findany
+	 */
+	public void setPattern(int pattern) {
+		this.pattern = pattern;
+	}
+	
 	/**
 	 * add new file metadata to this string's metadata
 	 * @param metadata list of file data to add
@@ -113,6 +132,9 @@ public class InputString {
 	public String toString() {
 		String result = new String();
 		result += "\"" + this.str + "\" ";
+		if(this.pattern != -1) {
+			result += "[" + this.pattern + "] ";
+		}
 		for(int i = 0; i < this.metadata.size(); i++) {
 			result += this.metadata.get(i).toString();
 		}
@@ -128,6 +150,7 @@ public class InputString {
 	public InputString clone() {
 		InputString copy = new InputString(this.str);
 		copy.addMetadata(((ArrayList<StringFileData>)this.metadata.clone()));
+		copy.pattern = this.pattern;
 		return copy;
 	}
 }
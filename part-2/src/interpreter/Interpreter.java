@@ -5,10 +5,17 @@ import generator.parser.LL1_Rule;
 import generator.parser.LL1_Token;
 import generator.parser.LL1_TokenType;
 import generator.parser.Script_Lexer;
-import generator.regex.DFA;
+import generator.regex.Capture_DFA;
 import generator.regex.NFA_Identifier;
-import generator.regex.RecursiveDescent;
+import generator.regex.Regex_Compiler;
+import generator.regex.Regex_Limit_Exception;
+import generator.regex.Regex_Matcher;
+import generator.regex.Regex_Match;
+import generator.regex.Regex_Pattern;
+import generator.regex.Regex_Search;
+import generator.regex.Regex_Set;
 import global.InputBuffer;
+import global.Options;
 import global.Token;
 
 import java.text.ParseException;
@@ -19,6 +26,7 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Scanner;
 import java.util.Stack;
 
@@ -49,6 +57,7 @@ public class Interpreter {
 	public static final String ID = "ID";
 	public static final String PRINT = "print";
 	public static final String FIND = "find";
+	public static final String FINDANY = "findany";
 	public static final String MAXFREQSTR = "maxfreqstring";
 	public static final String REPLACE = "replace";
 	public static final String RECURSIVEREPLACE = "recursivereplace";
@@ -84,6 +93,7 @@ public class Interpreter {
 		boolean length = false;
 		boolean print = false;
 		boolean find = false;
+		boolean findany = false;
 		boolean maxfreqstr = false;
 		boolean replace = false;
 		boolean recursivereplace = false;
@@ -97,7 +107,10 @@ public class Interpreter {
 		boolean at_file_in = false;
 		boolean at_file_out = false;
 		
-		DFA curr_regex = null;
+		Regex_Pattern curr_regex = null;
+		String curr_regex_value = null;
+		Regex_Search curr_search = null;
+		ArrayList<String> curr_regexes = new ArrayList<String>();
 		String file_in = null;
 		String file_out = null;
 		String replacement = null;
@@ -206,6 +219,11 @@ public class Interpreter {
 							//System.out.println("unary op find");
 							find = true;
 						}
+						//find any of several regexes
+						else if(token.getType().equals(FINDANY)) {
+							findany = true;
+							curr_regexes.clear();
+						}
 						else if(token.getType().equals(MAXFREQSTR)) {
 							//System.out.println("maxfreqstr = true");
 							maxfreqstr = true;
@@ -236,10 +254,16 @@ public class Interpreter {
 							union = true;
 						}
 						//currently in find
-						if(find) {
+						if(find || findany) {
 							if(token.getType().equals(REGEX)) {
 								//System.out.println("find: building regex...");
-								curr_regex = this.generateDFA(token.getValue());
+								if(find) {
+									curr_search = this.generateSearch(token.getValue());
+								}
+								//findany's regexes are compiled together once the list ends
+								else {
+									curr_regexes.add(token.getValue());
+								}
 								at_file_in = true;
 							}
 							else if(token.getType().equals(ASCII_STR) && at_file_in) {
@@ -247,7 +271,14 @@ public class Interpreter {
 								//System.out.println("find: found file, running find");
 								file_in = token.getValue();
 								Identifier new_id = new Identifier("ans");
-								new_id.setValue(this.find(curr_regex, file_in));
+								if(find) {
+									//a skipped find finds nothing
+									new_id.setValue(curr_search == null ? new ArrayList<InputString>() : this.find(curr_search, file_in));
+								}
+								else {
+									Regex_Set set = this.generateSet(curr_regexes);
+									new_id.setValue(set == null ? new ArrayList<InputString>() : this.findany(set, file_in));
+								}
 								temp_stk.push(new_id);
 								
 								Identifier temp = null;
@@ -272,19 +303,22 @@ public class Interpreter {
 									temp_stk.push(temp);
 								}
 								find = false;
+								findany = false;
 							}
 						}
 						if(replace || recursivereplace) {
 							//get regex
 							if(token.getType().equals(REGEX)) {
 								//System.out.println("replace: building regex...");
-								curr_regex = this.generateDFA(token.getValue());
+								//built once the replacement shows if it refers to groups
+								curr_regex_value = token.getValue();
 								at_replacement = true;
 							}
 							//get replacement string
 							else if(token.getType().equals(ASCII_STR)) {
 								if(at_replacement) {
 									replacement = token.getValue();
+									curr_regex = this.generateReplace(curr_regex_value, replacement);
 									at_replacement = false;
 									at_file_in = true;
 								}
@@ -298,16 +332,19 @@ public class Interpreter {
 								else if(at_file_out) {
 									file_out = token.getValue();
 									at_file_out = false;
-									String replaced = new String();
-									if(replace) {
-										//System.out.println("normal replace");
-										replaced = this.replace(curr_regex, replacement, file_in);
+									//a skipped replace leaves the output file as it is
+									if(curr_regex != null) {
+										String replaced = new String();
+										if(replace) {
+											//System.out.println("normal replace");
+											replaced = this.replace(curr_regex, replacement, file_in);
+										}
+										else {//recursive replace
+											//System.out.println("recursive replace");
+											replaced = this.recursivereplace(curr_regex, replacement, file_in);
+										}
+										this.writeFile(replaced, file_out);
 									}
-									else {//recursive replace
-										//System.out.println("recursive replace");
-										replaced = this.recursivereplace(curr_regex, replacement, file_in);
-									}
-									this.writeFile(replaced, file_out);
 									replace = false;
 									recursivereplace = false;
 								}
@@ -366,20 +403,176 @@ public class Interpreter {
 	 */
 	
 	/**
-	 * generate a DFA from a given regex string
+	 * generate a compiled pattern from a given regex string
+	 * (engine is picked by Options.ENGINE)
+	 * @param regex regular expression to generate from
+	 * @return pattern that represents the same language as the regex, null if it goes over a size limit
+	 * @throws ParseException thrown by Regex_Compiler.compile
+	 */
+	private Regex_Pattern generateDFA(String regex) throws ParseException {
+		Regex_Pattern pattern = null;
+		try {
+			pattern = Regex_Compiler.compile(regex, new ArrayList<NFA_Identifier>());
+		}
+		catch(Regex_Limit_Exception rle) {
+			this.skip(rle);
+			return null;
+		}
+		if(Options.STATS) {
+			System.out.println(pattern.getStats());
+		}
+		return pattern;
+	}
+	
+	/**
+	 * generate a compiled pattern for replace from a given regex string, a
+	 * tagged dfa if the replacement refers to the regex's groups ($0 to $9)
+	 * @param regex regular expression to generate from
+	 * @param replacement word to replace matches with
+	 * @return pattern that represents the same language as the regex, null if it goes over a size limit
+	 * @throws ParseException thrown by Regex_Compiler.compileCaptures
+	 * @throws ParseException thrown if the replacement refers to a group the regex doesn't have
+	 */
+	private Regex_Pattern generateReplace(String regex, String replacement) throws ParseException {
+		int group = this.last_group(replacement);
+		if(group == -1) {
+			return this.generateDFA(regex);
+		}
+		Capture_DFA pattern = null;
+		try {
+			pattern = Regex_Compiler.compileCaptures(regex, new ArrayList<NFA_Identifier>());
+		}
+		catch(Regex_Limit_Exception rle) {
+			this.skip(rle);
+			return null;
+		}
+		if(group > pattern.getGroups()) {
+			throw new ParseException("Script ERROR: replacement refers to group $" + group + ", regex " + regex +
+					" has " + pattern.getGroups() + " groups", 0);
+		}
+		if(Options.STATS) {
+			System.out.println(pattern.getStats());
+		}
+		return pattern;
+	}
+	
+	/**
+	 * report a regex that went over a size limit, only the statement using it
+	 * is skipped (a find finds nothing, a replace writes nothing)
+	 * @param rle exception thrown while compiling the regex
+	 */
+	private void skip(Regex_Limit_Exception rle) {
+		System.out.println(rle.getMessage() + ", statement skipped");
+	}
+	
+	/**
+	 * find the highest group a replacement refers to
+	 * @param replacement word to replace matches with
+	 * @return number of the highest group referred to, -1 if there are no references
+	 */
+	private int last_group(String replacement) {
+		int group = -1;
+		for(int k = 0; k + 1 < replacement.length(); k++) {
+			if(replacement.charAt(k) == '$' && replacement.charAt(k+1) == '$') {
+				//escaped $, not a reference
+				k++;
+			}
+			else if(replacement.charAt(k) == '$' && Character.isDigit(replacement.charAt(k+1))) {
+				group = Math.max(group, replacement.charAt(k+1) - '0');
+			}
+		}
+		return group;
+	}
+	
+	/**
+	 * fill in the group references of a replacement for a match ($0 is the whole
+	 * match, $1 to $9 its groups, a group that didn't match is empty, $$ is a $)
+	 * @param replacement word to replace matches with
+	 * @param match match to take the groups of
+	 * @param input text the match was found in
+	 * @return the replacement with every reference filled in
+	 */
+	private String expand(String replacement, Regex_Match match, String input) {
+		if(replacement.indexOf('$') == -1) {
+			return replacement;
+		}
+		StringBuilder result = new StringBuilder();
+		for(int k = 0; k < replacement.length(); k++) {
+			char letter = replacement.charAt(k);
+			if(letter == '$' && k + 1 < replacement.length() && replacement.charAt(k+1) == '$') {
+				result.append(letter);
+				k++;
+			}
+			else if(letter == '$' && k + 1 < replacement.length() && Character.isDigit(replacement.charAt(k+1))) {
+				String group = match.getGroup(input, replacement.charAt(k+1) - '0');
+				if(group != null) {
+					result.append(group);
+				}
+				k++;
+			}
+			else {
+				result.append(letter);
+			}
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * find the longest match from an offset, with its groups if the matcher keeps them
+	 * @param matcher matcher over the pattern to match
+	 * @param input text to match
+	 * @param from offset the match starts at
+	 * @return the longest non-empty match, null if there is none
+	 */
+	private Regex_Match longest_match(Regex_Matcher matcher, String input, int from) {
+		if(matcher instanceof Capture_DFA.Cursor) {
+			return ((Capture_DFA.Cursor) matcher).longestMatch(input, from, input.length());
+		}
+		int end = matcher.longestMatchEnd(input, from, input.length());
+		return end == -1 ? null : new Regex_Match(from, end);
+	}
+	
+	/**
+	 * generate a search over a given regex string for find
 	 * @param regex regular expression to generate from
-	 * @return dfa that represents the same language as the regex
-	 * @throws ParseException thrown by RecursiveDescent.descend
+	 * @return search that finds every match of the regex, null if it goes over a size limit
+	 * @throws ParseException thrown by Regex_Compiler.compileSearch
 	 */
-	private DFA generateDFA(String regex) throws ParseException {
-		//init the nfa generator
-		RecursiveDescent dfa_generator = new RecursiveDescent(regex, new ArrayList<NFA_Identifier>());
-		NFA_Identifier nfa;
-		//generate the nfa
-		nfa = dfa_generator.descend();
-		//convert to dfa
-		DFA dfa = new DFA(nfa.getNFA());
-		return dfa;
+	private Regex_Search generateSearch(String regex) throws ParseException {
+		Regex_Search search = null;
+		try {
+			search = Regex_Compiler.compileSearch(regex, new ArrayList<NFA_Identifier>());
+		}
+		catch(Regex_Limit_Exception rle) {
+			this.skip(rle);
+			return null;
+		}
+		if(Options.STATS) {
+			System.out.println(search.getPattern().getStats());
+		}
+		return search;
+	}
+	
+	/**
+	 * generate a set of regexes scanned together for findany, each match
+	 * carries the index of the regex that matched it
+	 * @param regexes regular expressions to generate from
+	 * @return the compiled set, null if a regex goes over a size limit
+	 * @throws ParseException thrown by Regex_Set
+	 */
+	private Regex_Set generateSet(ArrayList<String> regexes) throws ParseException {
+		Regex_Set set = null;
+		try {
+			set = new Regex_Set(regexes, new ArrayList<NFA_Identifier>());
+		}
+		catch(Regex_Limit_Exception rle) {
+			this.skip(rle);
+			return null;
+		}
+		if(Options.STATS) {
+			System.out.println(set.getStats());
+		}
+		return set;
 	}
 	
 	/**
@@ -414,7 +607,7 @@ public class Interpreter {
 	 * @return list of replaced strings
 	 * @throws ParseException 
 	 */
-	private String replace(DFA regex, String replacement,String input_file) throws ParseException {
+	private String replace(Regex_Pattern regex, String replacement,String input_file) throws ParseException {
 		Scanner in = null;
 		try {
 			in = new Scanner(new File(input_file));
@@ -423,35 +616,32 @@ public class Interpreter {
 			throw new ParseException("Script ERROR: file \"" + input_file + "\" does not exist", 0);
 		}
 		String input = in.nextLine();
+		Regex_Matcher matcher = regex.matcher();
 		for(int i = 0; i < input.length(); i++) {
-			regex.reset();
 			int match_start = i;
-			int match_end = -1;
-			//look for a match
-			for(int j = i; j < input.length(); j++) {
-				regex.gotoNext(input.charAt(j));
-				if(regex.atFinal()) {
-					//save the current index
-					match_end = j;
-				}
-				else if(regex.atDead()) {
-					//go to another start index
-					break;
-				}
-			}
+			//look for the longest match (end is inclusive below)
+			Regex_Match match = this.longest_match(matcher, input, i);
+			int match_end = match == null ? -1 : match.getEnd() - 1;
 			if(match_end != -1) {
+				//the groups come with the match, no second scan
+				String value = this.expand(replacement, match, input);
 				String new_input = new String();
 				for(int k = 0; k < match_start; k++) {
 					new_input += input.charAt(k);
 				}
-				for(int k = 0; k < replacement.length(); k++) {
-					new_input += replacement.charAt(k);
+				for(int k = 0; k < value.length(); k++) {
+					new_input += value.charAt(k);
 				}
 				for(int k = match_end+1; k < input.length(); k++) {
 					new_input += input.charAt(k);
 				}
 				input = new_input;
-				i = (match_end - match_start) - replacement.length();
+				i = (match_end - match_start) - value.length();
+				//a replacement longer than its match would resume before the text (it used to
+				//throw there), resume after the replaced text instead
+				if(i < -1) {
+					i = match_start + value.length() - 1;
+				}
 			}
 		}
 		return input;
@@ -466,7 +656,7 @@ public class Interpreter {
 	 * @return replaced file string
 	 * @throws FileNotFoundException thrown if input file not found
 	 */
-	private String recursivereplace(DFA regex, String replacement, String input_file) throws ParseException {
+	private String recursivereplace(Regex_Pattern regex, String replacement, String input_file) throws ParseException {
 		Scanner in = null;
 		try {
 			in = new Scanner(new File(input_file));
@@ -485,30 +675,22 @@ public class Interpreter {
 	 * @param input file to read and match with
 	 * @return replaced file
 	 */
-	private String recursivereplace_help(DFA regex, String replacement, String input) {
+	private String recursivereplace_help(Regex_Pattern regex, String replacement, String input) {
+		Regex_Matcher matcher = regex.matcher();
 		for(int i = 0; i < input.length(); i++) {
-			regex.reset();
 			int match_start = i;
-			int match_end = -1;
-			//look for a match
-			for(int j = i; j < input.length(); j++) {
-				regex.gotoNext(input.charAt(j));
-				if(regex.atFinal()) {
-					//save the current index
-					match_end = j;
-				}
-				else if(regex.atDead()) {
-					//go to another start index
-					break;
-				}
-			}
+			//look for the longest match (end is inclusive below)
+			Regex_Match match = this.longest_match(matcher, input, i);
+			int match_end = match == null ? -1 : match.getEnd() - 1;
 			if(match_end != -1) {
+				//the groups come with the match, no second scan
+				String value = this.expand(replacement, match, input);
 				String new_input = new String();
 				for(int k = 0; k < match_start; k++) {
 					new_input += input.charAt(k);
 				}
-				for(int k = 0; k < replacement.length(); k++) {
-					new_input += replacement.charAt(k);
+				for(int k = 0; k < value.length(); k++) {
+					new_input += value.charAt(k);
 				}
 				for(int k = match_end+1; k < input.length(); k++) {
 					new_input += input.charAt(k);
@@ -522,12 +704,35 @@ public class Interpreter {
 	
 	/**
 	 * finds all regex matches in a given file
-	 * @param regex pattern to match
+	 * @param search search over the regex to match
 	 * @param file input to check for matched
 	 * @return the list of all matching words
 	 */
-	private ArrayList<InputString> find(DFA regex, String file) throws ParseException {
-		ArrayList<InputString> result = new ArrayList<InputString>();
+	private ArrayList<InputString> find(Regex_Search search, String file) throws ParseException {
+		String file_buffer = this.readFile(file);
+		//regex match the file (leftmost LONGEST matches, no overlaps)
+		return this.collect(search.findAll(file_buffer), file_buffer, file, false);
+	}
+	
+	/**
+	 * finds all matches of any of a set of regexes in a given file, in one pass
+	 * @param set compiled regexes to match
+	 * @param file input to check for matched
+	 * @return the list of all matching words, each tagged with the regex that matched it
+	 */
+	private ArrayList<InputString> findany(Regex_Set set, String file) throws ParseException {
+		String file_buffer = this.readFile(file);
+		//leftmost LONGEST matches over the whole set, no overlaps, the first regex wins a tie
+		return this.collect(set.scan(file_buffer), file_buffer, file, true);
+	}
+	
+	/**
+	 * read a whole file into a string
+	 * @param file file to read
+	 * @return the file's contents
+	 * @throws ParseException thrown if the file doesn't exist
+	 */
+	private String readFile(String file) throws ParseException {
 		InputBuffer file_reader = null;
 		try {
 			file_reader = new InputBuffer(file);
@@ -536,57 +741,46 @@ public class Interpreter {
 			throw new ParseException("Script ERROR: file \"" + file + "\" does not exist", 0);
 		}
 		//convert the file to a string
-		String file_buffer = new String();
+		StringBuilder file_builder = new StringBuilder();
 		while(file_reader.peekNext() != '\n') {
-			file_buffer += file_reader.getNext();
-		}
-		//regex match the file
-		for(int i = 0; i < file_buffer.length(); i++) {
-			regex.reset();
-			int match_start, match_end;
-			match_start = i;
-			match_end = -1;
-			//look for matches starting at current index until the end of the file
-			for(int j = i; j < file_buffer.length(); j++) {
-				regex.gotoNext(file_buffer.charAt(j));
-				//if we've found a match
-				if(regex.atFinal()) {
-					//log the match
-					match_end = j;
-					//keep going, want LONGEST match
-				}
-				//if we're deadlocked
-				else if(regex.atDead()) {
-					//stop looking for a match
-					break;
-				}
+			file_builder.append(file_reader.getNext());
+		}
+		return file_builder.toString();
+	}
+	
+	/**
+	 * turn match spans into a list of matched words with their positions
+	 * @param spans matches in order
+	 * @param file_buffer text the spans index
+	 * @param file name of the file the text came from
+	 * @param tagged true: each word keeps the id of the pattern that matched it
+	 * @return the list of all matching words
+	 */
+	private ArrayList<InputString> collect(ArrayList<Regex_Match> spans, String file_buffer, String file, boolean tagged) {
+		ArrayList<InputString> result = new ArrayList<InputString>();
+		//matched string -> its entry in the results list (no duplicates)
+		HashMap<String, InputString> found = new HashMap<String, InputString>();
+		for(Regex_Match span : spans) {
+			//create the match (w/ metadata)
+			InputString match = new InputString(file_buffer.substring(span.getStart(), span.getEnd()));
+			if(tagged) {
+				match.setPattern(span.getPattern());
 			}
-			//if a match was found
-			if(match_end != -1) {
-				//move current position to the end of the match
-				i += match_end - match_start;
-				//create the match (w/ metadata)
-				InputString match = new InputString(file_buffer.substring(match_start, match_end+1));
-				ArrayList<Integer> positions = new ArrayList<Integer>();
-				positions.add(match_start);
-				StringFileData metadata = new StringFileData(file, positions);
-				match.addMetadata(metadata);
-				//add the match to the results list (no duplicates)
-				boolean added = false;
-				for(int k = 0; k < result.size(); k++) {
-					//if there's already a match
-					if(result.get(k).equals(match)) {
-						//System.out.println("duplicate");
-						//update the metadata
-						result.get(k).addMetadata(match.getMetadata());
-						added = true;
-					}
-				}
-				//if it doesn't exist
-				if(!added) {
-					//add a new element
-					result.add(match);
-				}
+			ArrayList<Integer> positions = new ArrayList<Integer>();
+			positions.add(span.getStart());
+			StringFileData metadata = new StringFileData(file, positions);
+			match.addMetadata(metadata);
+			InputString existing = found.get(match.getString());
+			//if there's already a match
+			if(existing != null) {
+				//update the metadata
+				existing.addMetadata(match.getMetadata());
+			}
+			//if it doesn't exist
+			else {
+				//add a new element
+				found.put(match.getString(), match);
+				result.add(match);
 			}
 		}
 		return result;